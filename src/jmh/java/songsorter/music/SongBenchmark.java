@@ -0,0 +1,62 @@
+package songsorter.music;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-song operations that run once per pair or per song when sorting and drawing results
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SongBenchmark {
+    private static final int POINTS = 1024;
+
+    private SpotifySong a, b;
+    private EmotionPoint[] points;
+    private int next;
+
+    @Setup
+    public void createSongs() {
+        SpotifySong[] songs = SyntheticSongs.songs(2, 7);
+        a = songs[0];
+        b = songs[1];
+
+        // Spread over every quadrant so each branch of asEmotion() is taken
+        Random r = new Random(7);
+        points = new EmotionPoint[POINTS];
+        for (int i = 0; i<POINTS; i++) {
+            points[i] = new EmotionPoint(r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1);
+        }
+    }
+
+    @Benchmark
+    public double distance() {
+        return a.distance(b);
+    }
+
+    @Benchmark
+    public double averageArousal() {
+        return a.getAverageArousal();
+    }
+
+    @Benchmark
+    public String asEmotion() {
+        next = (next + 1) & (POINTS - 1);
+        return points[next].asEmotion();
+    }
+}
@@ -0,0 +1,55 @@
+package songsorter.music;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import songsorter.tour.TourPlanner;
+import songsorter.tour.TourResult;
+
+/**
+ * Time to sort a playlist the way {@code SorterPlaylist.sort()} does, construction and improvement of the tour
+ * included. Every call sorts the same unsorted songs from the same start song, since none of the steps change their
+ * input, so no setup runs between calls and the playlist is not left sorted for the next one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    int size;
+
+    private SpotifySong[] songs;
+    private TourPlanner planner;
+    private int start;
+
+    @Setup
+    public void createSongs() {
+        songs = SyntheticSongs.songs(size, 42);
+        planner = TourPlanner.defaultPlanner();
+        // Fixed instead of the random start of sort(), so runs are comparable
+        start = size / 2;
+    }
+
+    @Benchmark
+    public SpotifySong[] sort() {
+        int[] present = SongOrder.present(songs);
+        double[][] coords = SongOrder.coordinates(songs, present);
+        TourResult tour = planner.plan(coords[0], coords[1], start);
+        return SongOrder.reorder(songs, present, tour.order());
+    }
+}
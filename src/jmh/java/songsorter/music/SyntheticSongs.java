@@ -0,0 +1,48 @@
+package songsorter.music;
+
+import java.util.Random;
+
+/**
+ * Builds songs with random but repeatable emotions, so benchmarks need no network or Python
+ */
+public final class SyntheticSongs {
+    /** Samples in a 30 second preview clip */
+    public static final int CLIP_SAMPLES = 60;
+
+    private SyntheticSongs() {}
+
+    /**
+     * Creates an emotion series that drifts smoothly around a random mood, like the model output for a clip
+     * @param r the random source
+     * @param samples number of samples
+     * @return the series
+     */
+    public static EmotionSeries series(Random r, int samples) {
+        double[] arousal = new double[samples];
+        double[] valence = new double[samples];
+        double a = r.nextDouble() * 1.6 - 0.8, v = r.nextDouble() * 1.6 - 0.8;
+        for (int i = 0; i<samples; i++) {
+            a = Math.max(-1, Math.min(1, a + r.nextGaussian() * 0.05));
+            v = Math.max(-1, Math.min(1, v + r.nextGaussian() * 0.05));
+            arousal[i] = a;
+            valence[i] = v;
+        }
+        return EmotionSeries.of(arousal, valence);
+    }
+
+    /**
+     * Creates analyzed songs
+     * @param n number of songs
+     * @param seed seed for the emotions
+     * @return the songs, each with a {@code CLIP_SAMPLES} long series
+     */
+    public static SpotifySong[] songs(int n, long seed) {
+        Random r = new Random(seed);
+        SpotifySong[] songs = new SpotifySong[n];
+        for (int i = 0; i<n; i++) {
+            songs[i] = new SpotifySong("synthetic" + i, "Song " + i);
+            songs[i].setEmotions(series(r, CLIP_SAMPLES));
+        }
+        return songs;
+    }
+}
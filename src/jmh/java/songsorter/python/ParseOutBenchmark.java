@@ -0,0 +1,73 @@
+package songsorter.python;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import songsorter.music.EmotionSeries;
+
+/**
+ * Parsing the printed tensor that {@code demo.py} returns for each song
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseOutBenchmark {
+
+    /** 60 rows is a 30 second preview, 600 a five minute local file */
+    @Param({"60", "600"})
+    int rows;
+
+    private String output;
+    private byte[] bytes;
+
+    @Setup
+    public void createOutput() {
+        output = tensor(new Random(1), rows);
+        bytes = output.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public EmotionSeries parseOut() {
+        return PythonEnvHandler.parseOut(output);
+    }
+
+    /** Parsing the stdout of a process as it is read, like {@code PythonEnvHandler.runAndParse()} */
+    @Benchmark
+    public EmotionSeries parseStream() throws IOException {
+        return new TensorParser(new ByteArrayInputStream(bytes)).parse();
+    }
+
+    /**
+     * Prints an n x 2 tensor the way PyTorch does with four decimals, aligned columns and the row indent
+     * @param r the random source
+     * @param rows number of rows
+     * @return the printed tensor
+     */
+    static String tensor(Random r, int rows) {
+        StringBuilder sb = new StringBuilder("tensor([");
+        for (int i = 0; i<rows; i++) {
+            if (i > 0) sb.append(",\n        ");
+            sb.append(String.format(Locale.ROOT, "[%7.4f, %7.4f]", r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1));
+        }
+        return sb.append("])").toString();
+    }
+}
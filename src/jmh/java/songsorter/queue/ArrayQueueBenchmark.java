@@ -0,0 +1,75 @@
+package songsorter.queue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Filling and emptying an {@code ArrayQueue} and an {@code IntArrayQueue}, reported per enqueue and dequeue pair
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayQueueBenchmark {
+    private static final int OPS = 1024;
+
+    /** Queue capacity, small queues wrap around many times per invocation */
+    @Param({"16", "1024"})
+    int capacity;
+
+    private ArrayQueue<Integer> queue;
+    private IntArrayQueue ints;
+    private Integer[] items;
+
+    @Setup
+    public void createQueue() {
+        queue = new ArrayQueue<Integer>(capacity);
+        ints = new IntArrayQueue(capacity);
+        items = new Integer[OPS];
+        for (int i = 0; i<OPS; i++) items[i] = i;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void enqueueDequeue(Blackhole bh) {
+        for (int i = 0; i<OPS; i += capacity) {
+            int n = Math.min(capacity, OPS - i);
+            for (int j = 0; j<n; j++) queue.enqueue(items[i + j]);
+            for (int j = 0; j<n; j++) bh.consume(queue.dequeue());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void enqueueDequeueInts(Blackhole bh) {
+        for (int i = 0; i<OPS; i += capacity) {
+            int n = Math.min(capacity, OPS - i);
+            for (int j = 0; j<n; j++) ints.enqueue(i + j);
+            for (int j = 0; j<n; j++) bh.consume(ints.dequeue());
+        }
+    }
+
+    /** Queues that start small and grow to hold every element, like a queue made with the default capacity */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void growFromDefault(Blackhole bh) {
+        ArrayQueue<Integer> q = new ArrayQueue<Integer>();
+        for (int i = 0; i<OPS; i++) q.enqueue(items[i]);
+        while (!q.isEmpty()) bh.consume(q.dequeue());
+    }
+}
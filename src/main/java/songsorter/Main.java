@@ -8,10 +8,12 @@ import java.awt.GridLayout;
 import java.awt.Insets;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -38,7 +40,13 @@ import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
 import se.michaelthelin.spotify.model_objects.credentials.ClientCredentials;
 import se.michaelthelin.spotify.requests.authorization.client_credentials.ClientCredentialsRequest;
+import songsorter.metrics.Metrics;
+import songsorter.music.EmotionSeries;
+import songsorter.music.EmotionSummary;
+import songsorter.music.LocalLibrary;
+import songsorter.music.LocalPlaylist;
 import songsorter.music.NoPreviewException;
+import songsorter.music.PlaylistPipeline;
 import songsorter.music.Song;
 import songsorter.music.SorterPlaylist;
 import songsorter.music.SpotifySong;
@@ -57,10 +65,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
-import java.util.NoSuchElementException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
-import java.util.stream.DoubleStream;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
@@ -79,33 +92,47 @@ public class Main {
 	private static JPanel panel;
 	private static ChartPanel graph;  
 	private static JTabbedPane tabbedPane; 
+	private static JLabel titleLabel; 
 	private static SorterPlaylist playlist; 
+	private PlaylistLoad playlistLoad; 
+	private LibraryImport libraryImport; 
 	
-	private static final PythonEnvHandler penv = makePythonEnv();
+	private static final CompletableFuture<PythonEnvHandler> penvFuture = CompletableFuture.supplyAsync(Main::makePythonEnv, 
+			r -> new Thread(r, "songsorter-python-setup").start());
 	private static SpotifyApi sapi; 
 
 	
 	/**
-	 * Method to create and error handle the private {@code PythonEnvHandler}
-	 * @return
+	 * Method to create the private {@code PythonEnvHandler} and pre-warm the model. Runs in the background 
+	 * while the window is shown. 
+	 * @return the ready {@code PythonEnvHandler}
 	 */
 	private static PythonEnvHandler makePythonEnv() {
 		try {
-			return new PythonEnvHandler(); 
-		} catch (PythonError e) {
-			e.printStackTrace();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
+			PythonEnvHandler env = new PythonEnvHandler(); 
+			Runtime.getRuntime().addShutdownHook(new Thread(env::close));
+			env.warmUp();
+			return env; 
+		} catch (PythonError | InterruptedException | IOException e) {
 			e.printStackTrace();
+			throw new CompletionException(e); 
 		}
-		return null;
+	}
+
+	/**
+	 * Gets the {@code PythonEnvHandler}, waiting for the background setup if it has not finished yet. 
+	 * Must not be called on the EDT. 
+	 * @return the ready {@code PythonEnvHandler}
+	 */
+	private static PythonEnvHandler penv() {
+		return penvFuture.join(); 
 	}
 
 	/**
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		Metrics.shared().dumpOnExit(Paths.get(System.getProperty(Metrics.FILE_PROPERTY, PythonEnvHandler.OUTPUT_PATH + "metrics.txt")));
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
@@ -210,23 +237,8 @@ public class Main {
 			public void actionPerformed(ActionEvent e) {
 				if (!textField.getText().equals("")) {
 					if (SorterPlaylist.isPlaylist(textField.getText())) {
-							try {
-								playlist = new SorterPlaylist(sapi, textField.getText());
-							} catch (ParseException e1) {
-								JOptionPane.showMessageDialog(frame, "A ParseException has occured while getting the Spotify playlist. ", "Error", JOptionPane.ERROR_MESSAGE);
-								e1.printStackTrace();
-							} catch (SpotifyWebApiException e1) {
-								JOptionPane.showMessageDialog(frame, "A SpotifyWebApiException has occured while getting the Spotify playlist. ", "Error", JOptionPane.ERROR_MESSAGE);
-								e1.printStackTrace();
-							} catch (IOException e1) {
-								JOptionPane.showMessageDialog(frame, "An IOException has occured while getting the Spotify playlist. ", "Error", JOptionPane.ERROR_MESSAGE);
-								e1.printStackTrace();
-							} catch (URISyntaxException e1) {
-								JOptionPane.showMessageDialog(frame, "An URISyntaxException has occured while getting the Spotify playlist. ", "Error", JOptionPane.ERROR_MESSAGE);
-								e1.printStackTrace();
-							}
 						mainInput.setVisible(false);
-						addMultiOut(playlistOutput);
+						addStreamingOut(playlistOutput, textField.getText());
 					} else if (SpotifySong.isSong(textField.getText())) {
 							try {
 								SpotifySong s;
@@ -283,9 +295,9 @@ public class Main {
 		mainInput.add(fileIn, gbc_fileIn);
 		GridBagLayout gbl_fileIn = new GridBagLayout();
 		gbl_fileIn.columnWidths = new int[]{130, 0};
-		gbl_fileIn.rowHeights = new int[]{26, 26, 0};
+		gbl_fileIn.rowHeights = new int[]{26, 26, 26, 0};
 		gbl_fileIn.columnWeights = new double[]{0.0, Double.MIN_VALUE};
-		gbl_fileIn.rowWeights = new double[]{0.0, 0.0, Double.MIN_VALUE};
+		gbl_fileIn.rowWeights = new double[]{0.0, 0.0, 0.0, Double.MIN_VALUE};
 		fileIn.setLayout(gbl_fileIn);
 		
 		JLabel lblImportAFile = new JLabel("Import a file");
@@ -325,6 +337,22 @@ public class Main {
 		fileChooser.setSize(new Dimension(10, 10));
 		fileIn.add(fileChooser, gbc_fileChooser);
 		
+		JButton folderBtn = new JButton("Import a folder");
+		folderBtn.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser folderChooser = new JFileChooser();
+				folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+				if (folderChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION && folderChooser.getSelectedFile() != null) {
+					mainInput.setVisible(false);
+					addLibraryOut(playlistOutput, folderChooser.getSelectedFile());
+				}
+			}
+		});
+		GridBagConstraints gbc_folderBtn = new GridBagConstraints();
+		gbc_folderBtn.gridx = 0;
+		gbc_folderBtn.gridy = 2;
+		fileIn.add(folderBtn, gbc_folderBtn);
+		
 		JButton cacheBtn = new JButton("Clear Caches");
 		cacheBtn.addMouseListener(new MouseAdapter() {
 			@Override
@@ -385,55 +413,22 @@ public class Main {
 		
 		double[] arousals = so.getArousalAsList(); 
 		double[] valences = so.getValenceAsList(); 
-		double[] timestamps = IntStream.range(0, arousals.length).asDoubleStream().map(num -> 0.5*num).toArray(); 
-		double avgTimestamp = (double) (DoubleStream.of(timestamps).sum())/timestamps.length; 
-		
-		// Lin Reg Arousal
-		double timestampSxx = 0;
-		
-		double arousalSyy = 0;
-		double arousalSxy = 0;
-
-		double valenceSyy = 0;
-		double valenceSxy = 0;
-
+		double[] timestamps = new double[arousals.length]; 
 		for (int i = 0; i<timestamps.length; i++) {
-			timestampSxx += Math.pow(timestamps[i] - avgTimestamp, 2); 
-
-			arousalSyy += Math.pow((arousals[i]-so.getAverageArousal()), 2); 
-			valenceSyy += Math.pow((valences[i]-so.getAverageValence()), 2); 
-			
-			arousalSxy += (arousals[i]-so.getAverageArousal())*(timestamps[i] - avgTimestamp);
-			valenceSxy += (valences[i]-so.getAverageValence())*(timestamps[i] - avgTimestamp);
+			timestamps[i] = EmotionSeries.time(i); 
 		}
 
-		// CAlculate Pearson's coefficent of correlation
-		double arousalR = arousalSxy/Math.pow(timestampSxx*arousalSyy, 0.5); 
-		double valenceR = valenceSxy/Math.pow(timestampSxx*valenceSyy, 0.5); 
-
-		// Calculate standard devation of each variable
-		double arousalSD = Math.pow(arousalSyy/arousals.length, 0.5);
-		double valenceSD = Math.pow(valenceSyy/valences.length, 0.5);
-		double timestampSD = Math.pow(timestampSxx/timestamps.length, 0.5);
-
-		// Calulate the slope of the line (b in y-hat = a + bx)
-		double arousalM = arousalR * (arousalSD/timestampSD); 
-		double valenceM = valenceR * (valenceSD/timestampSD); 
-
-		// Since the line is guanranteed to pass trough (x-bar, y-bar) it will follow the form: 
-		//     y - y-bar = m(x - x-bar)
-		//     y = m*x - m*avgTimestamp + y-bar
-		// Thus the value of a = m*avgTimestamp + y-bar
-		// Drawing a line from two points is trivial beyond that point
-		double arousalA = arousalM*avgTimestamp + so.getAverageArousal();
-		double valenceA = valenceM*avgTimestamp + so.getAverageValence(); 
-
-
+		// Mean, Pearson's r and the regression line (y-hat = a + mx) are computed once when emotions are set
+		EmotionSummary summary = so.getSummary(); 
+		double arousalM = summary.arousal().slope(); 
+		double valenceM = summary.valence().slope(); 
+		double arousalA = summary.arousal().intercept(); 
+		double valenceA = summary.valence().intercept(); 
 
 		JTextPane txtpnLineline = new JTextPane();
 		txtpnLineline.setBackground(UIManager.getColor("Button.background"));
 		txtpnLineline.setEditable(false);
-		txtpnLineline.setText("  Average Arousal:  " + (int)(so.getAverageArousal()*10000)/10000.0 + "\n  Average Valence:  " + (int)(so.getAverageValence()*10000)/10000.0 + 
+		txtpnLineline.setText("  Average Arousal:  " + (int)(summary.arousal().mean()*10000)/10000.0 + "\n  Average Valence:  " + (int)(summary.valence().mean()*10000)/10000.0 + 
 														"\n\n  ΔArousal:  " + (int)(arousalM*10000)/10000.0 + "\n  ΔValence:  " + (int)(valenceM*10000)/10000.0 + 
 														"\n\n  A = " + (int)(arousalM*10000)/10000.0 + "t + " + (int)(arousalA*10000)/10000.0 + 
 														"\n  V = " + (int)(valenceM*10000)/10000.0 + "t + " + (int)(valenceA*10000)/10000.0 + 
@@ -545,6 +540,103 @@ public class Main {
 	 * @param out the panel to be drawn to
 	 */
 	public void addMultiOut(JPanel out) {
+		JButton sortBtn = layoutMultiOut(out, "Results for " + playlist.name()); 
+
+		ArrayQueue<SpotifySong> arrQSS = playlist.asQueue(); 
+		songPanels = new SongPanel[playlist.length()]; 
+		int i = 0; 
+		for (SpotifySong ss: arrQSS) {
+			SongPanel songPanel;
+			try {
+				if (ss!=null) {
+					songPanel = new SongPanel(ss);
+					songPanels[i] = songPanel; 
+					panel.add(songPanel);
+				}
+			} catch (ParseException e1) {
+				JOptionPane.showMessageDialog(frame, "A ParseException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e1.printStackTrace();
+			} catch (SpotifyWebApiException e1) {
+				JOptionPane.showMessageDialog(frame, "A SpotifyWebApiException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e1.printStackTrace();
+			} catch (IOException e1) {
+				JOptionPane.showMessageDialog(frame, "An IOException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e1.printStackTrace();
+			} catch (PythonError e1) {
+				JOptionPane.showMessageDialog(frame, "A PythonError occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e1.printStackTrace();
+			}
+			i++; 
+		}
+		
+
+		EmotionComputation task = new EmotionComputation(frame, songPanels);
+		task.execute();
+	}
+
+	/**
+	 * Switch the window panel to be the output panel for a playlist that is still loading. Songs are added 
+	 * as soon as they are analyzed by a {@code PlaylistPipeline}, and sorting is enabled once all are done. 
+	 * @param out the panel to be drawn to
+	 * @param url Spotify url to playlist
+	 */
+	public void addStreamingOut(JPanel out, String url) {
+		JButton sortBtn = layoutMultiOut(out, "Loading playlist..."); 
+		sortBtn.setEnabled(false);
+		songPanels = new SongPanel[0]; 
+
+		playlistLoad = new PlaylistLoad(frame, url, sortBtn); 
+		playlistLoad.execute();
+	}
+
+	/**
+	 * Switch the window panel to be the output panel for a local folder. Every mp3 under the folder is listed as 
+	 * soon as it is analyzed by a {@code LocalLibrary}, and sorting is enabled once all are done. 
+	 * @param out the panel to be drawn to
+	 * @param folder the folder to import
+	 */
+	public void addLibraryOut(JPanel out, File folder) {
+		JButton sortBtn = layoutMultiOut(out, "Importing " + folder.getName() + "..."); 
+		sortBtn.setEnabled(false);
+		// Replace the SongPanel list with a plain list, which stays responsive with tens of thousands of songs
+		for (ActionListener l: sortBtn.getActionListeners()) {
+			sortBtn.removeActionListener(l);
+		}
+		DefaultListModel<String> model = new DefaultListModel<String>(); 
+		JList<String> list = new JList<String>(model); 
+		panel.add(list); 
+
+		LibraryImport task = new LibraryImport(frame, folder, model, sortBtn); 
+		sortBtn.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				task.sortLibrary();
+			}
+		});
+		libraryImport = task; 
+		task.execute();
+	}
+
+	/**
+	 * Stops a playlist or folder that is still loading, so it does not keep downloading and analyzing after the user leaves
+	 */
+	private void stopLoading() {
+		if (playlistLoad != null) {
+			playlistLoad.stop();
+			playlistLoad = null; 
+		}
+		if (libraryImport != null) {
+			libraryImport.stop();
+			libraryImport = null; 
+		}
+	}
+
+	/**
+	 * Lays out the title, the tab with the list of songs, and the sort and back buttons of the playlist output
+	 * @param out the panel to be drawn to
+	 * @param title the title text
+	 * @return the sort button
+	 */
+	private JButton layoutMultiOut(JPanel out, String title) {
 		out.setVisible(true); 
 		out.removeAll();
 		GridBagLayout gridBagLayout = new GridBagLayout();
@@ -557,17 +649,18 @@ public class Main {
 		JButton btnNewButton = new JButton("Back");
 		btnNewButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
+				stopLoading();
 				playlistOutput.setVisible(false); 
 				introPanel.setVisible(true); 
 			}
 		});
 		
-		JLabel lblNewLabel = new JLabel("Results for " + playlist.name());
+		titleLabel = new JLabel(title);
 		GridBagConstraints gbc_lblNewLabel = new GridBagConstraints();
 		gbc_lblNewLabel.insets = new Insets(0, 0, 5, 0);
 		gbc_lblNewLabel.gridx = 0;
 		gbc_lblNewLabel.gridy = 0;
-		out.add(lblNewLabel, gbc_lblNewLabel);
+		out.add(titleLabel, gbc_lblNewLabel);
 		
 		tabbedPane = new JTabbedPane(JTabbedPane.TOP);
 		GridBagConstraints gbc_tabbedPane = new GridBagConstraints();
@@ -579,43 +672,12 @@ public class Main {
 		
 		JScrollPane scrollPane = new JScrollPane();
 		tabbedPane.addTab("Playlist", null, scrollPane, null);
+		tabbedPane.addTab("Metrics", null, new MetricsPanel(), null);
 		
 		panel = new JPanel();
 		scrollPane.setViewportView(panel);
 		panel.setLayout(new GridLayout(0, 1, 0, 0));
 
-		ArrayQueue<SpotifySong> arrQSS = playlist.asQueue(); 
-		songPanels = new SongPanel[playlist.length()]; 
-		int i = 0; 
-		while (!arrQSS.isEmpty()) {
-			SongPanel songPanel;
-			try {
-				SpotifySong ss = arrQSS.dequeue(); 
-				if (ss!=null) {
-					songPanel = new SongPanel(ss);
-					songPanels[i] = songPanel; 
-					panel.add(songPanel);
-				}
-			} catch (ParseException e1) {
-				JOptionPane.showMessageDialog(frame, "A ParseException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-				e1.printStackTrace();
-			} catch (SpotifyWebApiException e1) {
-				JOptionPane.showMessageDialog(frame, "A SpotifyWebApiException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-				e1.printStackTrace();
-			} catch (NoSuchElementException e1) {
-				JOptionPane.showMessageDialog(frame, "A NoSuchElementException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-				e1.printStackTrace();
-			} catch (IOException e1) {
-				JOptionPane.showMessageDialog(frame, "An IOException occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-				e1.printStackTrace();
-			} catch (PythonError e1) {
-				JOptionPane.showMessageDialog(frame, "A PythonError occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-				e1.printStackTrace();
-			}
-			i++; 
-		}
-		
-
 		JButton sortBtn = new JButton("Sort");
 		GridBagConstraints gbc_sortBtn = new GridBagConstraints();
 		gbc_sortBtn.insets = new Insets(0, 0, 5, 0);
@@ -639,8 +701,7 @@ public class Main {
 		gbc_btnNewButton.gridy = 3;
 		out.add(btnNewButton, gbc_btnNewButton);
 
-		EmotionComputation task = new EmotionComputation(frame, songPanels);
-		task.execute();
+		return sortBtn; 
 	}
 	
 	/**
@@ -653,10 +714,14 @@ public class Main {
 		frame.setBounds(100, 100, 900, 625);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		
-		if (penv == null) {
-			JOptionPane.showMessageDialog(frame, "An error has occured while creating the Python Client. The program will now exit. ", "Fatal Error", JOptionPane.ERROR_MESSAGE);
-			System.exit(0);
-		}
+		penvFuture.whenComplete((env, e) -> {
+			if (e != null) {
+				EventQueue.invokeLater(() -> {
+					JOptionPane.showMessageDialog(frame, "An error has occured while creating the Python Client. The program will now exit. ", "Fatal Error", JOptionPane.ERROR_MESSAGE);
+					System.exit(0);
+				});
+			}
+		});
 		
 		frame.getContentPane().add(introPanel, BorderLayout.NORTH);
 		addIntro(introPanel); 
@@ -694,21 +759,20 @@ public class Main {
 
 		@Override
 		public Integer doInBackground() {
+			PythonEnvHandler penv = penv(); 
 			ArrayQueue<SongPanel> panelQueue = new ArrayQueue<SongPanel>(songPanels); 
-			while (!panelQueue.isEmpty()) {
-				SongPanel sp = panelQueue.dequeue(); 
+			List<Future<SongPanel>> tasks = new ArrayList<Future<SongPanel>>(); 
+			for (SongPanel sp: panelQueue) {
 				if (sp!=null) {
-					try {
+					tasks.add(penv.submit(() -> {
 						sp.updateEmotions(penv);
-						sp.repaint();
-					} catch (PythonError | IOException | InterruptedException e) {
-						JOptionPane.showMessageDialog(frame, "An error occured while computing emotion, some songs's information may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
-						e.printStackTrace();
-					} 
+						return sp; 
+					}));
 				}
 			} 
 			
 			try {
+				PythonEnvHandler.awaitAll(tasks);
 				playlist.setEmotions(penv);
 			} catch (PythonError | IOException | InterruptedException e) {
 				JOptionPane.showMessageDialog(frame, "An error occured while computing emotion, some songs's information may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
@@ -729,6 +793,211 @@ public class Main {
 		}
  	}
 
+	/**
+	 * A {@code SwingWorker} class which loads and analyzes a playlist through a {@code PlaylistPipeline}, 
+	 * adding a {@code SongPanel} on the EDT for every song as soon as it is analyzed
+	 */
+	class PlaylistLoad extends SwingWorker<SorterPlaylist, PlaylistLoad.Loaded> {
+
+		/** A song and its position in the playlist */
+		record Loaded(SpotifySong song, int index) {}
+
+		private JFrame frame; 
+		private String url; 
+		private JButton sortBtn; 
+		private volatile PlaylistPipeline pipeline; 
+		// Playlist positions of the panels shown so far, in the order they appear
+		private final List<Integer> shown = new ArrayList<Integer>(); 
+		private volatile boolean stopped; 
+
+		/**
+		 * Constructor for the task
+		 * @param f JFrame that has the cursor to be updated
+		 * @param u Spotify url to playlist
+		 * @param sb the sort button, enabled once the playlist is loaded
+		 */
+		PlaylistLoad(JFrame f, String u, JButton sb) {
+			frame = f; 
+			frame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			url = u; 
+			sortBtn = sb; 
+		}
+
+		@Override
+		public SorterPlaylist doInBackground() throws Exception {
+			PlaylistPipeline pl = new PlaylistPipeline(sapi, penv()); 
+			pipeline = pl; 
+			if (stopped) pl.cancel();
+			return pl.run(url, new PlaylistPipeline.Listener() {
+				@Override
+				public void onStart(String name, int total) {
+					EventQueue.invokeLater(() -> titleLabel.setText("Results for " + name));
+				}
+
+				@Override
+				public void onSong(SpotifySong song, int index) {
+					publish(new Loaded(song, index));
+				}
+			}); 
+		}
+
+		/**
+		 * Cancels the pipeline and drops songs that have not been shown yet
+		 */
+		void stop() {
+			stopped = true; 
+			PlaylistPipeline pl = pipeline; 
+			if (pl != null) pl.cancel();
+			frame.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+		}
+
+		@Override
+		protected void process(List<Loaded> songs) {
+			if (stopped) return; 
+			for (Loaded l: songs) {
+				try {
+					// Songs finish out of order, so each panel goes where its song is in the playlist
+					int pos = -Collections.binarySearch(shown, l.index()) - 1; 
+					panel.add(new SongPanel(l.song()), pos);
+					shown.add(pos, l.index());
+				} catch (ParseException | SpotifyWebApiException | IOException | PythonError e1) {
+					JOptionPane.showMessageDialog(frame, "An error occured while creating the Playlist Output, some songs may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
+					e1.printStackTrace();
+				}
+			}
+			panel.revalidate();
+			panel.repaint();
+		}
+
+		@Override
+		public void done() {
+			if (stopped) return; 
+			frame.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+			try {
+				playlist = get(); 
+				sortBtn.setEnabled(true);
+				graph = new ChartPanel(playlist.asChart()); 
+				tabbedPane.addTab("Graph", null, Main.graph, null);
+				tabbedPane.revalidate();
+			} catch (InterruptedException | ExecutionException e) {
+				JOptionPane.showMessageDialog(frame, "An error has occured while getting the Spotify playlist. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * A {@code SwingWorker} class which imports a local folder through a {@code LocalLibrary}, adding each song 
+	 * to the list on the EDT as soon as it is analyzed
+	 */
+	class LibraryImport extends SwingWorker<LocalPlaylist, Song> {
+
+		private JFrame frame; 
+		private File folder; 
+		private DefaultListModel<String> model; 
+		private JButton sortBtn; 
+		private volatile int found; 
+		private LocalPlaylist library; 
+		private volatile LocalLibrary importer; 
+		private volatile boolean stopped; 
+
+		/**
+		 * Constructor for the task
+		 * @param f JFrame that has the cursor to be updated
+		 * @param dir the folder to import
+		 * @param m the list model songs are added to
+		 * @param sb the sort button, enabled once the folder is analyzed
+		 */
+		LibraryImport(JFrame f, File dir, DefaultListModel<String> m, JButton sb) {
+			frame = f; 
+			frame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			folder = dir; 
+			model = m; 
+			sortBtn = sb; 
+		}
+
+		@Override
+		public LocalPlaylist doInBackground() throws Exception {
+			LocalLibrary ll = new LocalLibrary(penv()); 
+			importer = ll; 
+			if (stopped) ll.cancel();
+			return ll.run(folder.toPath(), new LocalLibrary.Listener() {
+				@Override
+				public void onFound(int n) {
+					found = n; 
+				}
+
+				@Override
+				public void onSong(Song song, int analyzed, int n) {
+					publish(song);
+				}
+			}); 
+		}
+
+		/**
+		 * Cancels the import and drops songs that have not been listed yet
+		 */
+		void stop() {
+			stopped = true; 
+			LocalLibrary ll = importer; 
+			if (ll != null) ll.cancel();
+			frame.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+		}
+
+		@Override
+		protected void process(List<Song> songs) {
+			if (stopped) return; 
+			for (Song s: songs) {
+				model.addElement(describe(s));
+			}
+			titleLabel.setText("Importing " + folder.getName() + "... " + model.size() + " of " + found + " songs analyzed");
+		}
+
+		@Override
+		public void done() {
+			if (stopped) return; 
+			frame.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+			try {
+				library = get(); 
+				titleLabel.setText("Results for " + library.name() + " (" + library.length() + " songs)");
+				sortBtn.setEnabled(true);
+			} catch (InterruptedException | ExecutionException e) {
+				JOptionPane.showMessageDialog(frame, "An error has occured while importing the folder. ", "Error", JOptionPane.ERROR_MESSAGE);
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Sorts the imported songs in the background, then shows them in the new order
+		 */
+		void sortLibrary() {
+			sortBtn.setEnabled(false);
+			frame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			new SwingWorker<Void, Void>() {
+				@Override
+				public Void doInBackground() {
+					library.sort(); 
+					return null; 
+				}
+
+				@Override
+				public void done() {
+					model.clear();
+					for (int i = 0; i<library.length(); i++) {
+						model.addElement(describe(library.get(i)));
+					}
+					frame.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+					sortBtn.setEnabled(true);
+				}
+			}.execute();
+		}
+
+		private String describe(Song s) {
+			EmotionSummary summary = s.getSummary(); 
+			return s.getTitle() + "    A: " + (int)(summary.arousal().mean()*10000)/10000.0 + "    V: " + (int)(summary.valence().mean()*10000)/10000.0; 
+		}
+	}
+
 	/**
 	 * A {@code SwingWorker} class which allows for emotion computation on one song updating it without 
 	 * blocking the GUI on the EDT. within the project however, it is made to block the GUI and is primarily
@@ -753,7 +1022,7 @@ public class Main {
 		@Override
 		public Integer doInBackground() {
 			try {
-				song.setEmotions(penv);
+				song.setEmotions(penv());
 			} catch (PythonError | IOException | InterruptedException e) {
 				JOptionPane.showMessageDialog(frame, "A error occured while computing emotion, some songs's information may be missing. ", "Error", JOptionPane.ERROR_MESSAGE);
 				e.printStackTrace();
@@ -0,0 +1,129 @@
+package songsorter;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import songsorter.metrics.Metrics;
+
+/**
+ * Panel showing every metric of the shared {@code Metrics} registry as a table, refreshed every second while
+ * the panel is showing, with a button to save them to a file.
+ */
+public class MetricsPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = {"Metric", "Kind", "Count/Value", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms"};
+
+	private final MetricsModel model = new MetricsModel();
+	private final Timer timer = new Timer(1000, e -> model.refresh());
+
+	/**
+	 * Create the panel.
+	 */
+	public MetricsPanel() {
+		setLayout(new BorderLayout());
+		JTable table = new JTable(model);
+		table.setAutoCreateRowSorter(true);
+		add(new JScrollPane(table), BorderLayout.CENTER);
+
+		JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton saveBtn = new JButton("Save...");
+		saveBtn.addActionListener(e -> save());
+		buttons.add(saveBtn);
+		add(buttons, BorderLayout.SOUTH);
+		model.refresh();
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		model.refresh();
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		super.removeNotify();
+	}
+
+	private void save() {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+			try {
+				Metrics.shared().dump(chooser.getSelectedFile().toPath());
+			} catch (IOException e) {
+				JOptionPane.showMessageDialog(this, "Unable to save metrics: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	/**
+	 * Table of the latest samples, read on the EDT
+	 */
+	private static class MetricsModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+
+		private List<Metrics.Sample> rows = new ArrayList<Metrics.Sample>();
+
+		void refresh() {
+			List<Metrics.Sample> samples = Metrics.shared().samples();
+			boolean sameRows = !samples.isEmpty() && samples.size() == rows.size();
+			rows = samples;
+			if (sameRows) {
+				// Keeps the selection and sort order while values change
+				fireTableRowsUpdated(0, rows.size() - 1);
+			} else {
+				fireTableDataChanged();
+			}
+		}
+
+		@Override
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column < 2 ? String.class : (column == 2 ? Long.class : Double.class);
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			Metrics.Sample s = rows.get(row);
+			boolean histogram = s.kind() == Metrics.Kind.HISTOGRAM;
+			switch (column) {
+				case 0: return s.name();
+				case 1: return s.kind().name().toLowerCase();
+				case 2: return s.value();
+				case 3: return histogram ? Math.round(s.latency().mean() / 1e3) / 1e3 : null;
+				case 4: return histogram ? s.latency().p50() / 1e6 : null;
+				case 5: return histogram ? s.latency().p95() / 1e6 : null;
+				case 6: return histogram ? s.latency().p99() / 1e6 : null;
+				default: return histogram ? s.latency().max() / 1e6 : null;
+			}
+		}
+	}
+}
@@ -6,15 +6,18 @@ import javax.swing.ImageIcon;
 import org.apache.hc.core5.http.ParseException;
 
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import songsorter.metrics.Metrics;
 import songsorter.music.SpotifySong;
 import songsorter.python.PythonEnvHandler;
 import songsorter.python.PythonError;
 
 import java.awt.GridBagLayout;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
@@ -32,7 +35,8 @@ public class SongPanel extends JPanel {
 	private JLabel arousalLabel, valenceLabel;
 
 	/**
-	 * Updates the labels on each {@code SongPanel} after emotions are computed
+	 * Updates the labels on each {@code SongPanel} after emotions are computed. 
+	 * May be called from an inference thread, the labels are updated on the EDT. 
 	 * @param penv the {@code PythonEnvHandler} which handles emotion computation
 	 * @throws PythonError If underlying Pythons service fails
 	 * @throws IOException If reading/writing to CLI fails
@@ -40,10 +44,11 @@ public class SongPanel extends JPanel {
 	 */
 	public void updateEmotions(PythonEnvHandler penv) throws PythonError, IOException, InterruptedException {
 		song.updateEmotions(penv);
-		arousalLabel.setText("Arousal: " + (int)(song.getAverageArousal()*10000)/10000.0);
-		arousalLabel.paintImmediately(arousalLabel.getVisibleRect());
-		valenceLabel.setText("Valence: " + (int)(song.getAverageArousal()*10000)/10000.0);
-		arousalLabel.paintImmediately(arousalLabel.getVisibleRect());
+		SwingUtilities.invokeLater(() -> {
+			arousalLabel.setText("Arousal: " + (int)(song.getAverageArousal()*10000)/10000.0);
+			valenceLabel.setText("Valence: " + (int)(song.getAverageValence()*10000)/10000.0);
+			repaint();
+		});
 	}
 	
 	/**
@@ -54,6 +59,7 @@ public class SongPanel extends JPanel {
 	 * @throws PythonError If the underlying Python service fails
 	 */
 	public SongPanel(SpotifySong s) throws ParseException, SpotifyWebApiException, IOException, PythonError {
+		long t0 = System.nanoTime(); 
 		this.setPreferredSize(new Dimension(200, 100));
 		song = s; 
 		GridBagLayout gridBagLayout = new GridBagLayout();
@@ -63,10 +69,16 @@ public class SongPanel extends JPanel {
 		gridBagLayout.rowWeights = new double[]{0.0, 1.0, 1.0};
 		setLayout(gridBagLayout);
 		
-		ImageIcon iI = new ImageIcon(s.getArt()); 
-		Image img = iI.getImage(); 
-		Image newimg = img.getScaledInstance(100, 100,  java.awt.Image.SCALE_SMOOTH);
-		iI = new ImageIcon(newimg);  
+		BufferedImage art = s.getArt(); 
+		ImageIcon iI = null; 
+		if (art != null) {
+			// Art from the cache is already thumbnail sized
+			Image img = art; 
+			if (art.getWidth() != 100 || art.getHeight() != 100) {
+				img = art.getScaledInstance(100, 100,  java.awt.Image.SCALE_SMOOTH);
+			}
+			iI = new ImageIcon(img);  
+		}
 		JLabel lblNewLabel = new JLabel(iI);
 		GridBagConstraints gbc_lblNewLabel = new GridBagConstraints();
 		gbc_lblNewLabel.insets = new Insets(0, 0, 5, 5);
@@ -126,7 +138,7 @@ public class SongPanel extends JPanel {
 		gbc_lblNewLabel_1.gridx = 1;
 		gbc_lblNewLabel_1.gridy = 1;
 		panel.add(valenceLabel, gbc_lblNewLabel_1);
-
+		Metrics.shared().histogram("ui.panel").recordSince(t0);
 	}
 
 }
@@ -0,0 +1,90 @@
+package songsorter.cli;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits how many requests run at once, with a bounded number waiting for a turn. A request that arrives when
+ * the waiting room is full, or waits longer than the timeout, is turned away so the caller can retry rather than
+ * piling up behind slow inference.
+ */
+final class Admission {
+    private final Semaphore running;
+    private final int concurrency, maxQueued;
+    private final long timeoutMillis;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Creates an admission limit
+     * @param concurrency maximum number of requests running at once
+     * @param maxQueued maximum number of requests waiting for a turn
+     * @param timeoutMillis longest a request waits for a turn
+     */
+    Admission(int concurrency, int maxQueued, long timeoutMillis) {
+        if (concurrency < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Concurrency must be at least one and the queue cannot be negative");
+        }
+        this.running = new Semaphore(concurrency, true);
+        this.concurrency = concurrency;
+        this.maxQueued = maxQueued;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Waits for a turn to run, {@code exit()} must be called afterwards if this returns {@code true}
+     * @return {@code true} if the request may run, {@code false} if it should be rejected
+     * @throws InterruptedException If interrupted while waiting
+     */
+    boolean enter() throws InterruptedException {
+        if (running.tryAcquire()) return true;
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return running.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ends a turn started by {@code enter()}
+     */
+    void exit() {
+        running.release();
+    }
+
+    /**
+     * Gets the number of requests running
+     * @return running requests
+     */
+    int active() {
+        return concurrency - running.availablePermits();
+    }
+
+    /**
+     * Gets the number of requests waiting for a turn
+     * @return waiting requests
+     */
+    int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the maximum number of requests running at once
+     * @return the concurrency limit
+     */
+    int concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Gets the maximum number of requests waiting
+     * @return the queue limit
+     */
+    int maxQueued() {
+        return maxQueued;
+    }
+}
@@ -0,0 +1,339 @@
+package songsorter.cli;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ParseException;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import songsorter.metrics.Metrics;
+import songsorter.music.EmotionSummary;
+import songsorter.music.LocalLibrary;
+import songsorter.music.LocalPlaylist;
+import songsorter.music.PlaylistPipeline;
+import songsorter.music.Song;
+import songsorter.music.SorterPlaylist;
+import songsorter.music.SpotifySong;
+import songsorter.python.PythonEnvHandler;
+import songsorter.python.PythonError;
+import songsorter.tour.TourResult;
+
+/**
+ * Headless entry point that analyzes playlists, tracks and local files without the Swing window and writes the
+ * results as NDJSON, one JSON object per line.
+ * <p>Usage: {@code java -cp songsorter.jar songsorter.cli.BatchMain [options] item...} where each item is a Spotify
+ * playlist url, a Spotify track url, an mp3 file or a folder of mp3s, and {@code -} reads more items from standard
+ * input, one per line. Options are:</p>
+ * <ul>
+ * <li>{@code --out FILE} writes the NDJSON to a file instead of standard output</li>
+ * <li>{@code --keys FILE} reads the Spotify {@code clientId} and {@code clientSecret} from a properties file,
+ * only needed for Spotify items, see {@code SpotifyClients} for using a stub instead</li>
+ * <li>{@code --no-sort} skips sorting</li>
+ * <li>{@code --starts N} and {@code --seed S} sort from several starts, like {@code -Dsongsorter.sort.starts}</li>
+ * </ul>
+ * <p>Every line has a {@code type}: {@code start} when a playlist or folder begins, {@code song} for each analyzed
+ * song as soon as it finishes, {@code error} for each item or song that failed, with the {@code song} for songs
+ * left out of a playlist or folder, {@code order} for each song of the final sorted order across all items, and one
+ * {@code summary} at the end with counts and throughput. Log messages go to standard error so standard output is
+ * only NDJSON. The exit code is 0 on success, 1 if any item failed and
+ * 2 for bad arguments.</p>
+ */
+public final class BatchMain {
+    // Private data
+    private final NdjsonWriter out;
+    private final String keysPath;
+    private final List<Song> songs = Collections.synchronizedList(new ArrayList<Song>());
+    private final AtomicInteger errors = new AtomicInteger();
+    private PythonEnvHandler penv;
+    private SpotifyApi sapi;
+
+    private BatchMain(NdjsonWriter out, String keysPath) {
+        this.out = out;
+        this.keysPath = keysPath;
+    }
+
+    /**
+     * Runs a batch, see the class description for arguments
+     * @param args options and items
+     */
+    public static void main(String[] args) {
+        // Before any song class is loaded, so nothing touches a display
+        System.setProperty("java.awt.headless", "true");
+        if (System.getProperty(Metrics.FILE_PROPERTY) != null) {
+            Metrics.shared().dumpOnExit(Paths.get(System.getProperty(Metrics.FILE_PROPERTY)));
+        }
+
+        List<String> items = new ArrayList<String>();
+        String outPath = null, keysPath = SpotifyClients.DEFAULT_KEYS;
+        boolean sort = true;
+        int starts = SorterPlaylist.SORT_STARTS;
+        Long seed = SorterPlaylist.SORT_SEED;
+        try {
+            for (int i = 0; i<args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> outPath = args[++i];
+                    case "--keys" -> keysPath = args[++i];
+                    case "--no-sort" -> sort = false;
+                    case "--starts" -> starts = Integer.parseInt(args[++i]);
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    case "-" -> items.addAll(readItems());
+                    case "-h", "--help" -> {
+                        usage(System.out);
+                        return;
+                    }
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        items.add(args[i]);
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length-1] : e.getMessage());
+            usage(System.err);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Unable to read items from standard input: " + e.getMessage());
+            System.exit(2);
+        }
+        if (items.isEmpty()) {
+            usage(System.err);
+            System.exit(2);
+        }
+
+        // The library logs progress to System.out, which would corrupt the NDJSON
+        OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        System.setOut(System.err);
+
+        int status;
+        try (NdjsonWriter writer = new NdjsonWriter(outPath == null ? stdout : new FileOutputStream(outPath))) {
+            BatchMain batch = new BatchMain(writer, keysPath);
+            status = batch.run(items, sort, starts, seed);
+        } catch (IOException e) {
+            System.err.println("Unable to write results: " + e.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    private static void usage(PrintStream ps) {
+        ps.println("usage: songsorter.cli.BatchMain [--out FILE] [--keys FILE] [--no-sort] [--starts N] [--seed S] item... ");
+        ps.println("  items are Spotify playlist or track urls, mp3 files or folders, - reads items from standard input");
+    }
+
+    private static List<String> readItems() throws IOException {
+        List<String> items = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (!line.isEmpty() && !line.startsWith("#")) items.add(line);
+        }
+        return items;
+    }
+
+    /**
+     * Analyzes every item, then sorts all the songs together
+     * @return the exit code
+     */
+    private int run(List<String> items, boolean sort, int starts, Long seed) {
+        long t0 = System.nanoTime();
+        try {
+            penv = new PythonEnvHandler();
+            Runtime.getRuntime().addShutdownHook(new Thread(penv::close));
+            penv.warmUp();
+        } catch (PythonError | IOException | InterruptedException e) {
+            error(null, "Unable to set up Python: " + e);
+            return 1;
+        }
+
+        // Single tracks and files are analyzed concurrently on the inference threads, playlists and folders
+        // already run their own pipelines so they go one after another
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+        for (String item: items) {
+            try {
+                if (SorterPlaylist.isPlaylist(item)) {
+                    runPlaylist(item);
+                } else if (SpotifySong.isSong(item)) {
+                    SpotifyApi api = spotify();
+                    pending.add(penv.submit(() -> {
+                        SpotifySong s = new SpotifySong(api, item);
+                        s.setEmotions(penv);
+                        song(item, s, -1);
+                        return null;
+                    }));
+                } else if (Files.isDirectory(Paths.get(item))) {
+                    runFolder(item);
+                } else if (Files.isRegularFile(Paths.get(item))) {
+                    pending.add(penv.submit(() -> {
+                        Song s = new Song(item);
+                        s.setEmotions(penv);
+                        song(item, s, -1);
+                        return null;
+                    }));
+                } else {
+                    error(item, "Not a Spotify url, file or folder");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error(item, "Interrupted");
+                return 1;
+            } catch (Exception e) {
+                error(item, e.toString());
+            }
+        }
+        for (Future<?> f: pending) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                error(null, e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+        }
+        long analyzeNanos = System.nanoTime() - t0;
+
+        TourResult tour = null;
+        if (sort && !songs.isEmpty()) {
+            tour = writeOrder(starts, seed);
+        }
+
+        long nanos = System.nanoTime() - t0;
+        NdjsonWriter.Line summary = out.line()
+            .put("type", "summary")
+            .put("items", items.size())
+            .put("songs", songs.size())
+            .put("errors", errors.get())
+            .put("analyzeMs", analyzeNanos / 1e6)
+            .put("elapsedMs", nanos / 1e6)
+            .put("songsPerSecond", songs.size() / (analyzeNanos / 1e9));
+        if (tour != null) {
+            summary.put("tourLength", tour.length())
+                .put("sortMs", tour.totalNanos() / 1e6)
+                .put("sortMethod", tour.method());
+        }
+        summary.write();
+        return errors.get() == 0 ? 0 : 1;
+    }
+
+    private void runPlaylist(String url) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException, InterruptedException {
+        SorterPlaylist p = new PlaylistPipeline(spotify(), penv).run(url, new PlaylistPipeline.Listener() {
+            @Override
+            public void onStart(String name, int total) {
+                out.line().put("type", "start").put("item", url).put("kind", "playlist").put("name", name).put("total", total).write();
+            }
+
+            @Override
+            public void onSong(SpotifySong song, int index) {
+                song(url, song, index);
+            }
+
+            @Override
+            public void onError(int index, String title, String reason) {
+                songError(url, index, title, reason);
+            }
+        });
+        System.err.println("Analyzed " + p.length() + " songs of " + p.name());
+    }
+
+    private void runFolder(String folder) throws IOException, InterruptedException {
+        out.line().put("type", "start").put("item", folder).put("kind", "folder").put("name", Paths.get(folder).getFileName() + "").write();
+        LocalPlaylist p = new LocalLibrary(penv).run(Path.of(folder), new LocalLibrary.Listener() {
+            @Override
+            public void onSong(Song song, int analyzed, int found) {
+                song(folder, song, -1);
+            }
+
+            @Override
+            public void onError(String path, String reason) {
+                songError(folder, -1, path, reason);
+            }
+        });
+        System.err.println("Analyzed " + p.length() + " songs in " + p.name());
+    }
+
+    /**
+     * Records an analyzed song and writes its line
+     * @param item the item the song came from
+     * @param s the song
+     * @param index position within a playlist, or -1
+     */
+    private void song(String item, Song s, int index) {
+        EmotionSummary summary = s.getSummary();
+        if (summary == null) {
+            error(item, "No emotions computed for " + s.getTitle());
+            return;
+        }
+        songs.add(s);
+        NdjsonWriter.Line line = out.line().put("type", "song").put("item", item);
+        if (index >= 0) line.put("index", index);
+        SongJson.describe(line, s).put("duration", summary.duration())
+            .put("arousalSd", summary.arousal().sd())
+            .put("valenceSd", summary.valence().sd())
+            .write();
+    }
+
+    private void error(String item, String message) {
+        errors.incrementAndGet();
+        out.line().put("type", "error").put("item", item).put("message", message).write();
+    }
+
+    /**
+     * Records a song of a playlist or folder that was left out
+     * @param item the item the song came from
+     * @param index position within a playlist, or -1
+     * @param song the track name or file
+     * @param message why the song was left out
+     */
+    private void songError(String item, int index, String song, String message) {
+        errors.incrementAndGet();
+        NdjsonWriter.Line line = out.line().put("type", "error").put("item", item);
+        if (index >= 0) line.put("index", index);
+        line.put("song", song).put("message", message).write();
+    }
+
+    /**
+     * Sorts every analyzed song together with the same planner as the window, writing one line per position
+     * @return the tour
+     */
+    private TourResult writeOrder(int starts, Long seed) {
+        LocalPlaylist all = new LocalPlaylist("batch", songs.toArray(new Song[0]));
+        if (starts > 1 || seed != null) {
+            all.sort(starts, seed != null ? seed : System.nanoTime());
+        } else {
+            all.sort();
+        }
+        for (int i = 0; i<all.length(); i++) {
+            SongJson.describe(out.line().put("type", "order").put("position", i), all.get(i)).write();
+        }
+        return all.lastTour();
+    }
+
+    /**
+     * Authenticates with Spotify on first use, so batches of local files need no keys
+     * @return the authenticated api
+     */
+    private synchronized SpotifyApi spotify() throws IOException, ParseException, SpotifyWebApiException {
+        if (sapi == null) {
+            sapi = SpotifyClients.connect(keysPath);
+        }
+        return sapi;
+    }
+}
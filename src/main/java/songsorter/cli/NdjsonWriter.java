@@ -0,0 +1,168 @@
+package songsorter.cli;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes newline-delimited JSON, one object per line, flushing after every line so results can be read while a
+ * batch is still running. Lines are written whole, so it is safe to use from many threads at once.
+ * <p>Only the flat objects the batch mode needs are supported: string, number, boolean and null values, and
+ * arrays of strings.</p>
+ */
+public class NdjsonWriter implements Closeable, Flushable {
+    private final Writer out;
+
+    /**
+     * Creates a writer over a stream, encoded as UTF-8
+     * @param out the stream, such as {@code System.out} or a file
+     */
+    public NdjsonWriter(OutputStream out) {
+        this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a new line
+     * @return a builder for the object, written by {@code Line.write()}
+     */
+    public Line line() {
+        return new Line();
+    }
+
+    private synchronized void writeLine(CharSequence json) {
+        try {
+            out.append(json).append('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * A single JSON object, built field by field
+     */
+    public class Line {
+        private final StringBuilder sb = new StringBuilder(128).append('{');
+
+        private Line() {}
+
+        private Line key(String key) {
+            if (sb.length() > 1) sb.append(',');
+            quote(sb, key);
+            sb.append(':');
+            return this;
+        }
+
+        /**
+         * Adds a string field
+         * @param key field name
+         * @param value the value, written as {@code null} if null
+         * @return this line
+         */
+        public Line put(String key, String value) {
+            key(key);
+            if (value == null) sb.append("null");
+            else quote(sb, value);
+            return this;
+        }
+
+        /**
+         * Adds an integer field
+         * @param key field name
+         * @param value the value
+         * @return this line
+         */
+        public Line put(String key, long value) {
+            key(key).sb.append(value);
+            return this;
+        }
+
+        /**
+         * Adds a number field
+         * @param key field name
+         * @param value the value, written as {@code null} if it is NaN or infinite since JSON has no such numbers
+         * @return this line
+         */
+        public Line put(String key, double value) {
+            key(key);
+            if (Double.isNaN(value) || Double.isInfinite(value)) sb.append("null");
+            else sb.append(value);
+            return this;
+        }
+
+        /**
+         * Adds a boolean field
+         * @param key field name
+         * @param value the value
+         * @return this line
+         */
+        public Line put(String key, boolean value) {
+            key(key).sb.append(value);
+            return this;
+        }
+
+        /**
+         * Adds an array of strings
+         * @param key field name
+         * @param values the values
+         * @return this line
+         */
+        public Line put(String key, String[] values) {
+            key(key).sb.append('[');
+            for (int i = 0; i<values.length; i++) {
+                if (i > 0) sb.append(',');
+                if (values[i] == null) sb.append("null");
+                else quote(sb, values[i]);
+            }
+            sb.append(']');
+            return this;
+        }
+
+        /**
+         * Finishes the object and writes it as one line
+         */
+        public void write() {
+            sb.append('}');
+            writeLine(sb);
+        }
+    }
+
+    /**
+     * Appends a string as a JSON string literal
+     * @param sb where to append
+     * @param s the string
+     */
+    static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,30 @@
+package songsorter.cli;
+
+import songsorter.music.EmotionSummary;
+import songsorter.music.Song;
+import songsorter.music.SpotifySong;
+
+/**
+ * Fields written for a song by the headless entry points, so batch and service output look the same
+ */
+final class SongJson {
+
+    private SongJson() {}
+
+    /**
+     * Adds the title, the Spotify id and artists or the file path, and the average arousal and valence of a song
+     * @param line the line to add to
+     * @param s a song whose emotions are computed
+     * @return the line
+     */
+    static NdjsonWriter.Line describe(NdjsonWriter.Line line, Song s) {
+        line.put("title", s.getTitle());
+        if (s instanceof SpotifySong ss) {
+            line.put("id", ss.getId()).put("artists", ss.getArtists());
+        } else {
+            line.put("path", s.getFilePath());
+        }
+        EmotionSummary summary = s.getSummary();
+        return line.put("arousal", summary.arousal().mean()).put("valence", summary.valence().mean());
+    }
+}
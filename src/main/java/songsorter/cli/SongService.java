@@ -0,0 +1,350 @@
+package songsorter.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import songsorter.metrics.Counter;
+import songsorter.metrics.Histogram;
+import songsorter.metrics.Metrics;
+import songsorter.music.NoPreviewException;
+import songsorter.music.PlaylistPipeline;
+import songsorter.music.Song;
+import songsorter.music.SorterPlaylist;
+import songsorter.music.SpotifySong;
+import songsorter.python.PythonEnvHandler;
+import songsorter.python.PythonError;
+
+/**
+ * Local HTTP service that analyzes and sorts songs for other tools, without the Swing window.
+ * <p>Endpoints, all answering with NDJSON and taking their arguments as query parameters:</p>
+ * <ul>
+ * <li>{@code /analyze/track?url=} analyzes a Spotify track</li>
+ * <li>{@code /analyze/file?path=} analyzes an mp3 on this machine</li>
+ * <li>{@code /sort/playlist?url=} analyzes and sorts a Spotify playlist, one line per song in sorted order,
+ * optionally from several starts with {@code starts=} and {@code seed=}</li>
+ * <li>{@code /metrics} every metric of the shared {@code Metrics} registry, including the latency percentiles of
+ * each endpoint as {@code service.analyze.track} and so on, and the admission queue</li>
+ * <li>{@code /health} answers once the service is up</li>
+ * </ul>
+ * <p>Every request shares one {@code PythonEnvHandler}, so its worker pool and result cache serve all callers.
+ * At most {@code concurrency} analyze and sort requests run at once and up to {@code queue} more wait for a turn,
+ * anything beyond that gets {@code 503} with {@code Retry-After} straight away.</p>
+ * <p>Run with {@code java -cp songsorter.jar songsorter.cli.SongService [--port N] [--keys FILE]}, see
+ * {@code SpotifyClients} for pointing the service at a local Spotify stub.</p>
+ */
+public class SongService {
+    /** Port, set with {@code -Dsongsorter.service.port=N} */
+    public static final int PORT = Integer.getInteger("songsorter.service.port", 8337);
+    /** Requests running at once, set with {@code -Dsongsorter.service.concurrency=N}, by default the worker pool size */
+    public static final int CONCURRENCY = Integer.getInteger("songsorter.service.concurrency", 0);
+    /** Requests waiting for a turn, set with {@code -Dsongsorter.service.queue=N} */
+    public static final int QUEUE = Integer.getInteger("songsorter.service.queue", 64);
+    /** Longest a request waits for a turn in milliseconds, set with {@code -Dsongsorter.service.timeout=N} */
+    public static final long TIMEOUT_MILLIS = Long.getLong("songsorter.service.timeout", 30000);
+
+    /** Work done by an endpoint, writing its response lines */
+    @FunctionalInterface
+    private interface Endpoint {
+        void handle(Map<String, String> params, NdjsonWriter out) throws Exception;
+    }
+
+    // Private data
+    private final PythonEnvHandler penv;
+    private final SpotifyApi sapi;
+    private final Admission admission;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Creates a service, call {@code start()} to begin serving
+     * @param penv the shared {@code PythonEnvHandler}
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests,
+     * or {@code null} to serve local files only
+     * @param concurrency maximum number of analyze and sort requests running at once
+     * @param queue maximum number of requests waiting for a turn
+     * @param timeoutMillis longest a request waits for a turn
+     */
+    public SongService(PythonEnvHandler penv, SpotifyApi sapi, int concurrency, int queue, long timeoutMillis) {
+        this.penv = penv;
+        this.sapi = sapi;
+        this.admission = new Admission(concurrency, queue, timeoutMillis);
+        Metrics.shared().gauge("service.active", admission::active);
+        Metrics.shared().gauge("service.queued", admission::queued);
+    }
+
+    /**
+     * Starts serving on the loopback address
+     * @param port the port, or 0 for any free port
+     * @throws IOException If the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Handlers mostly wait on Python and Spotify, admission control bounds the real work
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+
+        route("/analyze/track", true, this::analyzeTrack);
+        route("/analyze/file", true, this::analyzeFile);
+        route("/sort/playlist", true, this::sortPlaylist);
+        route("/metrics", false, (params, out) -> writeMetrics(out));
+        route("/health", false, (params, out) -> out.line().put("status", "ok").write());
+        server.start();
+        System.out.println("Song service listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Gets the port the service is bound to
+     * @return the port
+     */
+    public synchronized int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving, waiting up to a second for requests in progress
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void route(String path, boolean admitted, Endpoint endpoint) {
+        // /analyze/track is recorded as service.analyze.track and so on
+        String metric = "service" + path.replace('/', '.');
+        Histogram latency = Metrics.shared().histogram(metric);
+        Counter errors = Metrics.shared().counter(metric + ".errors");
+        Counter rejections = Metrics.shared().counter(metric + ".rejected");
+        server.createContext(path, exchange -> {
+            long t0 = System.nanoTime();
+            boolean ok = false, rejected = false;
+            try (exchange) {
+                if (!path.equals(exchange.getRequestURI().getPath())) {
+                    sendError(exchange, 404, "Not found");
+                    return;
+                }
+                if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("POST")) {
+                    sendError(exchange, 405, "Use GET or POST");
+                    return;
+                }
+                Map<String, String> params = params(exchange);
+                if (admitted && !admission.enter()) {
+                    rejected = true;
+                    rejections.increment();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, "Too many requests, try again later");
+                    return;
+                }
+                try {
+                    ok = respond(exchange, endpoint, params);
+                } finally {
+                    if (admitted) admission.exit();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!rejected) {
+                    latency.recordSince(t0);
+                    if (!ok) errors.increment();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs an endpoint into a buffer first, so failures get a proper status code instead of a half-written body
+     */
+    private boolean respond(HttpExchange exchange, Endpoint endpoint, Map<String, String> params) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (NdjsonWriter out = new NdjsonWriter(buffer)) {
+            endpoint.handle(params, out);
+        } catch (IllegalArgumentException | NoPreviewException e) {
+            sendError(exchange, 400, e.getMessage() == null ? e.toString() : e.getMessage());
+            return false;
+        } catch (Exception e) {
+            sendError(exchange, 500, e.toString());
+            return false;
+        }
+        byte[] body = buffer.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        exchange.getResponseBody().write(body);
+        return true;
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (NdjsonWriter out = new NdjsonWriter(buffer)) {
+            out.line().put("type", "error").put("status", code).put("message", message).write();
+        }
+        byte[] body = buffer.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Reads the query parameters, and for a form-encoded POST the body parameters as well
+     */
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        parseQuery(exchange.getRequestURI().getRawQuery(), params);
+        if (exchange.getRequestMethod().equals("POST")) {
+            try (InputStream in = exchange.getRequestBody()) {
+                parseQuery(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseQuery(String query, Map<String, String> params) {
+        if (query == null || query.isEmpty()) return;
+        for (String pair: query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private SpotifyApi spotify() {
+        if (sapi == null) {
+            throw new IllegalArgumentException("Spotify is not configured for this service");
+        }
+        return sapi;
+    }
+
+    private void analyzeTrack(Map<String, String> params, NdjsonWriter out) throws Exception {
+        String url = require(params, "url");
+        if (!SpotifySong.isSong(url)) {
+            throw new IllegalArgumentException("Not a Spotify track url: " + url);
+        }
+        SpotifySong s = new SpotifySong(spotify(), url);
+        s.setEmotions(penv);
+        writeSong(out, s);
+    }
+
+    private void analyzeFile(Map<String, String> params, NdjsonWriter out) throws Exception {
+        String path = require(params, "path");
+        if (!Files.isRegularFile(Paths.get(path))) {
+            throw new IllegalArgumentException("Not a file: " + path);
+        }
+        Song s = new Song(path);
+        s.setEmotions(penv);
+        writeSong(out, s);
+    }
+
+    private void sortPlaylist(Map<String, String> params, NdjsonWriter out) throws Exception {
+        String url = require(params, "url");
+        if (!SorterPlaylist.isPlaylist(url)) {
+            throw new IllegalArgumentException("Not a Spotify playlist url: " + url);
+        }
+        SorterPlaylist p = new PlaylistPipeline(spotify(), penv).run(url, (song, index) -> {});
+        if (params.containsKey("starts") || params.containsKey("seed")) {
+            p.sort(Integer.parseInt(params.getOrDefault("starts", "1")), Long.parseLong(params.getOrDefault("seed", "0")));
+        } else {
+            p.sort();
+        }
+        out.line().put("type", "playlist").put("name", p.name()).put("songs", p.length())
+            .put("tourLength", p.lastTour() == null ? 0 : p.lastTour().length()).write();
+        for (int i = 0; i<p.length(); i++) {
+            if (p.get(i) != null) {
+                SongJson.describe(out.line().put("type", "order").put("position", i), p.get(i)).write();
+            }
+        }
+    }
+
+    private static void writeSong(NdjsonWriter out, Song s) throws PythonError {
+        if (s.getSummary() == null) {
+            throw new PythonError("No emotions computed for " + s.getTitle());
+        }
+        SongJson.describe(out.line().put("type", "song"), s)
+            .put("duration", s.getSummary().duration())
+            .put("arousalSd", s.getSummary().arousal().sd())
+            .put("valenceSd", s.getSummary().valence().sd())
+            .write();
+    }
+
+    private static void writeMetrics(NdjsonWriter out) {
+        for (Metrics.Sample m: Metrics.shared().samples()) {
+            NdjsonWriter.Line line = out.line()
+                .put("type", m.kind().name().toLowerCase())
+                .put("name", m.name())
+                .put("value", m.value());
+            if (m.kind() == Metrics.Kind.HISTOGRAM) {
+                Histogram.Snapshot h = m.latency();
+                line.put("meanMs", h.mean() / 1e6)
+                    .put("p50Ms", h.p50() / 1e6)
+                    .put("p95Ms", h.p95() / 1e6)
+                    .put("p99Ms", h.p99() / 1e6)
+                    .put("maxMs", h.max() / 1e6);
+            }
+            line.write();
+        }
+    }
+
+    /**
+     * Runs the service until the process is stopped
+     * @param args {@code --port N} and {@code --keys FILE}, Spotify is left out if the keys cannot be used
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (System.getProperty(Metrics.FILE_PROPERTY) != null) {
+            Metrics.shared().dumpOnExit(Paths.get(System.getProperty(Metrics.FILE_PROPERTY)));
+        }
+        int port = PORT;
+        String keysPath = SpotifyClients.DEFAULT_KEYS;
+        for (int i = 0; i<args.length - 1; i++) {
+            if (args[i].equals("--port")) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--keys")) keysPath = args[++i];
+        }
+
+        try {
+            PythonEnvHandler penv = new PythonEnvHandler();
+            penv.warmUp();
+
+            SpotifyApi sapi = null;
+            try {
+                sapi = SpotifyClients.connect(keysPath);
+            } catch (Exception e) {
+                System.out.println("Spotify is unavailable, only local files can be analyzed: " + e);
+            }
+
+            int concurrency = CONCURRENCY > 0 ? CONCURRENCY : penv.getPool().size();
+            SongService service = new SongService(penv, sapi, concurrency, QUEUE, TIMEOUT_MILLIS);
+            service.start(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                service.stop();
+                penv.close();
+            }));
+        } catch (PythonError | IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package songsorter.cli;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hc.core5.http.ParseException;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+
+/**
+ * Creates authenticated {@code SpotifyApi} objects for the headless entry points.
+ * <p>The api host can be pointed at a local stub with {@code -Dsongsorter.spotify.host}, {@code .port} and
+ * {@code .scheme}, and {@code -Dsongsorter.spotify.token} uses a fixed access token instead of requesting one
+ * with the client credentials, so no keys or network are needed against a stub.</p>
+ */
+final class SpotifyClients {
+    /** Default location of the Spotify keys, the same file the window uses */
+    static final String DEFAULT_KEYS = "src/main/resources/keys.properties";
+
+    private SpotifyClients() {}
+
+    /**
+     * Creates an api object and authenticates it
+     * @param keysPath properties file with {@code clientId} and {@code clientSecret}, unused with a fixed token
+     * @return the authenticated api
+     * @throws IOException If the keys cannot be read or the token request fails
+     * @throws ParseException If the token response cannot be parsed
+     * @throws SpotifyWebApiException If Spotify rejects the credentials
+     */
+    static SpotifyApi connect(String keysPath) throws IOException, ParseException, SpotifyWebApiException {
+        SpotifyApi.Builder builder = new SpotifyApi.Builder();
+        String host = System.getProperty("songsorter.spotify.host");
+        if (host != null) {
+            builder.setHost(host)
+                .setPort(Integer.getInteger("songsorter.spotify.port", 443))
+                .setScheme(System.getProperty("songsorter.spotify.scheme", "https"));
+        }
+
+        String token = System.getProperty("songsorter.spotify.token");
+        if (token != null) {
+            SpotifyApi api = builder.build();
+            api.setAccessToken(token);
+            return api;
+        }
+
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(keysPath)) {
+            properties.load(in);
+        }
+        SpotifyApi api = builder
+            .setClientId(properties.getProperty("clientId"))
+            .setClientSecret(properties.getProperty("clientSecret"))
+            .build();
+        api.setAccessToken(api.clientCredentials().build().execute().getAccessToken());
+        return api;
+    }
+}
@@ -0,0 +1,34 @@
+package songsorter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Fetching the preview clip of a track in {@code SpotifySong.cacheSongClip()}, whether downloaded or found cached
+ */
+@Name("songsorter.ClipDownload")
+@Label("Clip Download")
+@Category({"Songsorter", "Network"})
+@Description("Fetching the preview clip of a Spotify track")
+public class ClipDownloadEvent extends Event {
+    @Label("Track ID")
+    public String trackId;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Size")
+    @DataAmount(DataAmount.BYTES)
+    public long bytes;
+
+    @Label("Cached")
+    @Description("The clip was already complete on disk and not downloaded")
+    public boolean cached;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,50 @@
+package songsorter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Python process from spawn to exit, either a one-off process started by {@code PythonEnvHandler.runCommand()}
+ * or a long lived {@code PythonWorker}, which gets a new event each time it is restarted
+ */
+@Name("songsorter.PythonProcess")
+@Label("Python Process")
+@Category({"Songsorter", "Python"})
+@Description("A Python process analyzing one file or serving a worker, from spawn to exit")
+public class PythonProcessEvent extends Event {
+    @Label("File")
+    @Description("File analyzed by a one-off process, not set for workers")
+    public String file;
+
+    @Label("Worker")
+    @Description("The process is a long lived worker serving many requests")
+    public boolean worker;
+
+    @Label("Restart")
+    @Description("Number of consecutive restarts of the worker before this process")
+    public int restart;
+
+    @Label("Requests")
+    @Description("Number of files analyzed by the worker")
+    public int requests;
+
+    @Label("Process ID")
+    public long pid;
+
+    @Label("Spawn Time")
+    @Description("Time taken to start the process")
+    @Timespan(Timespan.NANOSECONDS)
+    public long spawnTime;
+
+    @Label("Exit Code")
+    public int exitCode;
+
+    @Label("Output Size")
+    @DataAmount(DataAmount.BYTES)
+    public long outputBytes;
+}
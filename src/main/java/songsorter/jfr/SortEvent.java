@@ -0,0 +1,37 @@
+package songsorter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Sorting a playlist by emotion
+ */
+@Name("songsorter.Sort")
+@Label("Playlist Sort")
+@Category({"Songsorter", "Sort"})
+@Description("Building and improving the tour through a playlist's songs")
+public class SortEvent extends Event {
+    @Label("Playlist")
+    public String playlist;
+
+    @Label("Songs")
+    public int songs;
+
+    @Label("Starts")
+    @Description("Number of start songs tried")
+    public int starts;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Constructed Length")
+    @Description("Tour length before improvement")
+    public double constructedLength;
+
+    @Label("Length")
+    @Description("Final tour length")
+    public double length;
+}
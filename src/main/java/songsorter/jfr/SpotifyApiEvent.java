@@ -0,0 +1,30 @@
+package songsorter.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A request to the Spotify Web API
+ */
+@Name("songsorter.SpotifyApi")
+@Label("Spotify API Call")
+@Category({"Songsorter", "Network"})
+@Description("A request to the Spotify Web API")
+public class SpotifyApiEvent extends Event {
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("ID")
+    @Description("Track or playlist ID")
+    public String id;
+
+    @Label("Offset")
+    @Description("Offset of the page for paged requests")
+    public int offset;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
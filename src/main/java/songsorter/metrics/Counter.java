@@ -0,0 +1,35 @@
+package songsorter.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, such as songs analyzed or bytes downloaded. Cheap to update from many threads at once.
+ */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    Counter() {}
+
+    /**
+     * Adds one
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Adds an amount
+     * @param n the amount, such as a number of bytes
+     */
+    public void add(long n) {
+        count.add(n);
+    }
+
+    /**
+     * Gets the count
+     * @return the total so far
+     */
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,13 @@
+package songsorter.metrics;
+
+/**
+ * A value read when metrics are shown, such as the number of items waiting in a queue
+ */
+@FunctionalInterface
+public interface Gauge {
+    /**
+     * Reads the current value
+     * @return the value
+     */
+    long value();
+}
@@ -0,0 +1,122 @@
+package songsorter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of latencies in nanoseconds, for percentiles without keeping every sample.
+ * <p>Values are counted in log-linear buckets, eight per power of two, so a percentile is within about 6% of the
+ * true value at any scale from nanoseconds to hours, in a fixed 4 KB per histogram. Recording is lock-free.</p>
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * The state of a histogram at one moment
+     * @param count number of values recorded
+     * @param mean mean value in nanoseconds
+     * @param p50 median in nanoseconds
+     * @param p95 95th percentile in nanoseconds
+     * @param p99 99th percentile in nanoseconds
+     * @param max largest value in nanoseconds
+     */
+    public record Snapshot(long count, double mean, long p50, long p95, long p99, long max) {
+        /** A histogram with nothing recorded */
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                count, mean / 1e6, p50 / 1e6, p95 / 1e6, p99 / 1e6, max / 1e6);
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram() {}
+
+    /**
+     * Records a value
+     * @param nanos the latency, negative values are counted as zero
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        if (v > max.get()) max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * Records the time since a start, for use as {@code long t0 = System.nanoTime(); ...; h.recordSince(t0);}
+     * @param startNanos the start from {@code System.nanoTime()}
+     * @return the elapsed nanoseconds that were recorded
+     */
+    public long recordSince(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Gets the number of values recorded
+     * @return the count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Reads the count, mean, percentiles and maximum. Values recorded while this runs may be partly included.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i<BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) return Snapshot.EMPTY;
+        long m = max.get();
+        return new Snapshot(n, (double) sum.sum() / n, percentile(counts, n, 0.50, m), percentile(counts, n, 0.95, m),
+            percentile(counts, n, 0.99, m), m);
+    }
+
+    private static long percentile(long[] counts, long n, double p, long max) {
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i<BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, midpoint(i));
+        }
+        return max;
+    }
+
+    /**
+     * Finds the bucket of a value: values below {@code SUB_BUCKETS} have their own bucket, larger values share a
+     * bucket with others that have the same highest bit and the same next {@code SUB_BITS} bits
+     */
+    static int bucket(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((v >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gets a representative value of a bucket, the middle of its range
+     */
+    static long midpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long low = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+        return low + ((1L << shift) >>> 1);
+    }
+}
@@ -0,0 +1,166 @@
+package songsorter.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of named counters, latency histograms and gauges for every stage of the app: Spotify fetches, art
+ * decoding, clip downloads, Python inference, parsing, sorting and panel construction, along with the depth of
+ * the queues between pipeline stages.
+ * <p>Names are dotted, such as {@code python.inference}, and a name always refers to the same metric, so code
+ * can look a metric up each time or keep it in a field. Most code uses the {@code shared()} registry.</p>
+ */
+public final class Metrics {
+    /** Property naming the file every metric is written to at exit, {@code -Dsongsorter.metrics.file=PATH} */
+    public static final String FILE_PROPERTY = "songsorter.metrics.file";
+
+    private static final Metrics SHARED = new Metrics();
+
+    /** Kind of a metric */
+    public enum Kind { COUNTER, HISTOGRAM, GAUGE }
+
+    /**
+     * The value of one metric at one moment
+     * @param name the metric name
+     * @param kind the kind of metric
+     * @param value the count for a counter or histogram, or the reading of a gauge
+     * @param latency the distribution for a histogram, {@code Histogram.Snapshot.EMPTY} otherwise
+     */
+    public record Sample(String name, Kind kind, long value, Histogram.Snapshot latency) {}
+
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+    /**
+     * Creates an empty registry, most code should use {@code shared()}
+     */
+    public Metrics() {}
+
+    /**
+     * Gets the registry used throughout the app
+     * @return the shared registry
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Gets a counter, creating it on first use
+     * @param name the metric name
+     * @return the counter
+     * @throws IllegalArgumentException if the name is used by another kind of metric
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * Gets a latency histogram, creating it on first use
+     * @param name the metric name
+     * @return the histogram
+     * @throws IllegalArgumentException if the name is used by another kind of metric
+     */
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class);
+    }
+
+    /**
+     * Adds a gauge, replacing any gauge of the same name, such as the depth of the queues of a pipeline stage
+     * @param name the metric name
+     * @param gauge reads the value
+     * @throws IllegalArgumentException if the name is used by another kind of metric
+     */
+    public void gauge(String name, Gauge gauge) {
+        Object previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException(name + " is not a gauge");
+        }
+    }
+
+    private <T> T get(String name, Class<T> type) {
+        Object m = metrics.computeIfAbsent(name, k -> type == Counter.class ? new Counter() : new Histogram());
+        if (!type.isInstance(m)) {
+            throw new IllegalArgumentException(name + " is not a " + type.getSimpleName().toLowerCase());
+        }
+        return type.cast(m);
+    }
+
+    /**
+     * Reads every metric
+     * @return the samples sorted by name
+     */
+    public List<Sample> samples() {
+        List<Sample> samples = new ArrayList<Sample>(metrics.size());
+        for (Map.Entry<String, Object> e: metrics.entrySet()) {
+            Object m = e.getValue();
+            if (m instanceof Counter c) {
+                samples.add(new Sample(e.getKey(), Kind.COUNTER, c.get(), Histogram.Snapshot.EMPTY));
+            } else if (m instanceof Histogram h) {
+                Histogram.Snapshot s = h.snapshot();
+                samples.add(new Sample(e.getKey(), Kind.HISTOGRAM, s.count(), s));
+            } else if (m instanceof Gauge g) {
+                long value;
+                try {
+                    value = g.value();
+                } catch (RuntimeException ex) {
+                    value = -1;
+                }
+                samples.add(new Sample(e.getKey(), Kind.GAUGE, value, Histogram.Snapshot.EMPTY));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Writes every metric as a plain text table, one metric per line
+     * @param out where to write
+     * @throws IOException If writing fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append("# songsorter metrics at ").append(Instant.now().toString()).append('\n');
+        for (Sample s: samples()) {
+            out.append(String.format("%-40s %-9s %12d", s.name(), s.kind().name().toLowerCase(), s.value()));
+            if (s.kind() == Kind.HISTOGRAM) {
+                out.append("  ").append(s.latency().toString());
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes every metric to a file, replacing it
+     * @param file the file
+     * @throws IOException If writing fails
+     */
+    public void dump(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeTo(w);
+        }
+    }
+
+    /**
+     * Writes every metric to a file when the JVM exits
+     * @param file the file
+     */
+    public void dumpOnExit(Path file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                dump(file);
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Unable to write metrics to " + file + ": " + e.getMessage());
+            }
+        }, "songsorter-metrics-dump"));
+    }
+}
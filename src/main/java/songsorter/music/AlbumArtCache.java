@@ -0,0 +1,196 @@
+package songsorter.music;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import se.michaelthelin.spotify.model_objects.specification.Image;
+import songsorter.metrics.Metrics;
+import songsorter.python.Fingerprint;
+
+/**
+ * Album art thumbnails shared by every track of an album.
+ * <p>Art is downloaded once per image URL, scaled to {@code SIZE}x{@code SIZE} and stored as a PNG in
+ * {@code OUTPUT_PATH/art}, so later sessions only decode the small thumbnail. Decoded thumbnails are held through
+ * {@code SoftReference}s, giving one instance per album that the garbage collector may drop under memory pressure
+ * and that is read back from disk on the next use.</p>
+ */
+public class AlbumArtCache {
+    /** Width and height of the stored thumbnails, matching the art shown by {@code SongPanel} */
+    public static final int SIZE = 100;
+
+    private static final AlbumArtCache SHARED = new AlbumArtCache(Paths.get(SpotifySong.OUTPUT_PATH, "art"));
+
+    // Private data
+    private final Path dir;
+    private final ConcurrentHashMap<String, SoftReference<BufferedImage>> memory = new ConcurrentHashMap<String, SoftReference<BufferedImage>>();
+    // Loads in progress, removed once they finish so only albums being fetched right now are held
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<String, CompletableFuture<BufferedImage>>();
+
+    /**
+     * Creates a cache storing thumbnails in a directory
+     * @param dir the directory, created on the first store
+     */
+    public AlbumArtCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Gets the cache shared by every {@code SpotifySong}
+     * @return the shared cache
+     */
+    public static AlbumArtCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Picks the smallest image that still covers a thumbnail, so less is downloaded and decoded
+     * @param images the album images, as returned by {@code AlbumSimplified.getImages()}
+     * @return the chosen URL, or {@code null} if there are no images
+     */
+    public static String chooseUrl(Image[] images) {
+        if (images == null || images.length == 0) {
+            return null;
+        }
+        Image best = null;
+        for (Image i: images) {
+            if (i.getWidth() == null || i.getHeight() == null) {
+                continue;
+            }
+            if (Math.min(i.getWidth(), i.getHeight()) >= SIZE && (best == null || i.getWidth() < best.getWidth())) {
+                best = i;
+            }
+        }
+        // Spotify lists the largest image first, so it is the fallback when no size is known or all are too small
+        return best == null ? images[0].getUrl() : best.getUrl();
+    }
+
+    /**
+     * Gets the thumbnail for an image, from memory, then disk, then the network
+     * @param url the image URL
+     * @return the {@code SIZE}x{@code SIZE} thumbnail, or {@code null} if {@code url} is {@code null}
+     * @throws IOException If the image cannot be downloaded, decoded or stored
+     */
+    public BufferedImage get(String url) throws IOException {
+        if (url == null) {
+            return null;
+        }
+        BufferedImage img = fromMemory(url);
+        if (img != null) {
+            Metrics.shared().counter("art.memory").increment();
+            return img;
+        }
+        // Tracks of the same album loading at once wait for the first one instead of fetching the art again
+        CompletableFuture<BufferedImage> load = new CompletableFuture<BufferedImage>();
+        CompletableFuture<BufferedImage> pending = loading.putIfAbsent(url, load);
+        if (pending != null) {
+            return await(url, pending);
+        }
+        try {
+            // Another load may have finished between the first check and claiming the URL
+            img = fromMemory(url);
+            if (img == null) {
+                img = fromDisk(url);
+                if (img == null) {
+                    img = download(url);
+                }
+                memory.put(url, new SoftReference<BufferedImage>(img));
+            }
+            load.complete(img);
+            return img;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(url, load);
+        }
+    }
+
+    /**
+     * Removes every thumbnail held in memory, the ones on disk are kept
+     */
+    public void clearMemory() {
+        memory.clear();
+    }
+
+    private static BufferedImage await(String url, CompletableFuture<BufferedImage> pending) throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new IOException("Loading album art " + url + " failed: " + io.getMessage(), io);
+            }
+            throw e;
+        }
+    }
+
+    private BufferedImage fromMemory(String url) {
+        SoftReference<BufferedImage> ref = memory.get(url);
+        return ref == null ? null : ref.get();
+    }
+
+    private Path file(String url) {
+        return dir.resolve(Fingerprint.of(url) + ".png");
+    }
+
+    private BufferedImage fromDisk(String url) {
+        Path f = file(url);
+        if (!Files.exists(f)) {
+            return null;
+        }
+        try {
+            long t0 = System.nanoTime();
+            BufferedImage img = ImageIO.read(f.toFile());
+            Metrics.shared().histogram("art.decode").recordSince(t0);
+            return img;
+        } catch (IOException e) {
+            System.out.println("Ignoring corrupt album art " + f + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BufferedImage download(String url) throws IOException {
+        long t0 = System.nanoTime();
+        BufferedImage full;
+        try {
+            full = ImageIO.read(new URI(url).toURL());
+        } catch (URISyntaxException e) {
+            throw new IOException("Malformed album art URL " + url, e);
+        }
+        if (full == null) {
+            throw new IOException("Album art at " + url + " is not a readable image");
+        }
+
+        BufferedImage thumb = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumb.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(full, 0, 0, SIZE, SIZE, null);
+        g.dispose();
+
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "art", ".tmp");
+        try {
+            ImageIO.write(thumb, "png", tmp.toFile());
+            Files.move(tmp, file(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        // Fetching, decoding, scaling and storing together, art.decode only covers thumbnails read back from disk
+        Metrics.shared().histogram("art.download").recordSince(t0);
+        return thumb;
+    }
+}
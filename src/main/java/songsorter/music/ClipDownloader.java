@@ -0,0 +1,211 @@
+package songsorter.music;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import songsorter.metrics.Metrics;
+
+/**
+ * Downloads preview clips into the song cache over one shared {@code HttpClient}, so connections to the preview
+ * host are reused instead of opened for every clip.
+ * <p>Each download is written to a temporary file next to its target and renamed into place once complete, and the
+ * length of the finished clip is recorded in a {@code .len} file beside it. A cached clip is only reused when its size
+ * matches the recorded length, so a download cut off by a crash is fetched again instead of being treated as cached.</p>
+ * <p>Downloads to the same host are limited to {@code PER_HOST_LIMIT} at once.</p>
+ */
+public class ClipDownloader {
+    /** Maximum concurrent downloads from one host, set with {@code -Dsongsorter.downloads.perhost=N} */
+    public static final int PER_HOST_LIMIT = Integer.getInteger("songsorter.downloads.perhost", 8);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final ClipDownloader SHARED = new ClipDownloader();
+
+    /**
+     * Totals of the downloads made so far
+     * @param downloads number of clips fetched over the network
+     * @param reused number of clips found complete in the cache
+     * @param bytes total bytes fetched over the network
+     * @param nanos total time spent fetching, summed over concurrent downloads
+     */
+    public record Stats(long downloads, long reused, long bytes, long nanos) {
+        /**
+         * Average speed of a single download
+         * @return bytes per second, or 0 before the first download
+         */
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d downloaded (%.1f KB at %.1f KB/s), %d reused",
+                downloads, bytes / 1024.0, bytesPerSecond() / 1024.0, reused);
+        }
+    }
+
+    // Private data
+    private final HttpClient client;
+    private final int perHostLimit;
+    private final ConcurrentHashMap<String, Semaphore> hosts = new ConcurrentHashMap<String, Semaphore>();
+    private final LongAdder downloads = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * Creates a downloader with its own client and the default per-host limit
+     */
+    public ClipDownloader() {
+        this(HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(TIMEOUT)
+            .build(), PER_HOST_LIMIT);
+    }
+
+    /**
+     * Creates a downloader
+     * @param client the client every download is sent through
+     * @param perHostLimit maximum concurrent downloads from one host
+     */
+    public ClipDownloader(HttpClient client, int perHostLimit) {
+        this.client = client;
+        this.perHostLimit = perHostLimit;
+    }
+
+    /**
+     * Gets the downloader shared by every {@code SpotifySong}
+     * @return the shared downloader
+     */
+    public static ClipDownloader shared() {
+        return SHARED;
+    }
+
+    /**
+     * Downloads a file unless a complete copy is already cached, waiting for the host's limit if needed
+     * @param uri where to download from
+     * @param target where the file is stored
+     * @return {@code target}
+     * @throws IOException If the download fails or the server does not answer with 200
+     * @throws InterruptedIOException If interrupted while waiting for the download
+     */
+    public Path download(URI uri, Path target) throws IOException {
+        if (isCached(target)) {
+            reused.increment();
+            Metrics.shared().counter("clip.reused").increment();
+            return target;
+        }
+
+        Semaphore limit = hostLimit(uri);
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to download " + uri);
+        }
+        try {
+            if (isCached(target)) {
+                reused.increment();
+                Metrics.shared().counter("clip.reused").increment();
+                return target;
+            }
+            Path tmp = tempFile(target);
+            long start = System.nanoTime();
+            HttpResponse<Path> response;
+            try {
+                response = client.send(request(uri), HttpResponse.BodyHandlers.ofFile(tmp));
+            } catch (InterruptedException e) {
+                Files.deleteIfExists(tmp);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading " + uri);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            complete(uri, response, tmp, target, System.nanoTime() - start);
+            return target;
+        } finally {
+            limit.release();
+        }
+    }
+
+    /**
+     * Checks if a complete copy of a file is cached, meaning its size matches the length recorded when it was downloaded
+     * @param target the cached file
+     * @return if the file can be reused
+     */
+    public static boolean isCached(Path target) {
+        try {
+            String recorded = Files.readString(lengthFile(target), StandardCharsets.US_ASCII).trim();
+            return Files.size(target) == Long.parseLong(recorded);
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the totals of the downloads made so far
+     * @return download statistics
+     */
+    public Stats getStats() {
+        return new Stats(downloads.sum(), reused.sum(), bytes.sum(), nanos.sum());
+    }
+
+    private Semaphore hostLimit(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost();
+        return hosts.computeIfAbsent(host, h -> new Semaphore(perHostLimit));
+    }
+
+    private static HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+    }
+
+    private static Path tempFile(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, target.getFileName().toString(), ".part");
+    }
+
+    private static Path lengthFile(Path target) {
+        return Paths.get(target.toString() + ".len");
+    }
+
+    /**
+     * Verifies a finished response and moves its body into place, recording the length last so a crash in between
+     * leaves a file that is not reused
+     */
+    private void complete(URI uri, HttpResponse<Path> response, Path tmp, Path target, long elapsed) throws IOException {
+        if (response.statusCode() != 200) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Download of " + uri + " failed with HTTP " + response.statusCode());
+        }
+        long size = Files.size(tmp);
+        long expected = response.headers().firstValueAsLong("Content-Length").orElse(size);
+        if (size != expected) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Download of " + uri + " is truncated, got " + size + " of " + expected + " bytes");
+        }
+        Files.deleteIfExists(lengthFile(target));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(lengthFile(target), Long.toString(size), StandardCharsets.US_ASCII);
+
+        downloads.increment();
+        bytes.add(size);
+        nanos.add(elapsed);
+        Metrics.shared().histogram("clip.download").record(elapsed);
+        Metrics.shared().counter("clip.bytes").add(size);
+    }
+}
@@ -0,0 +1,299 @@
+package songsorter.music;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Spatial index over the average (arousal, valence) of analyzed songs, answering k-nearest, radius and rectangle
+ * queries on the circumplex without scanning every song.
+ * <p>Songs are bucketed into a uniform grid over [-1, 1] x [-1, 1], points outside are kept in the border cells.
+ * A query only visits the cells its region overlaps, and a k-nearest query visits rings of cells around the query
+ * point until no closer song can remain. Songs can be inserted at any time, such as from inference threads as
+ * each song is analyzed, and queries may run concurrently with inserts.</p>
+ * @param <S> the song type
+ */
+public class EmotionIndex<S extends Song> {
+    /** Default number of grid cells along each axis */
+    public static final int DEFAULT_GRID = 256;
+
+    private static final double MIN = -1, MAX = 1;
+
+    // Private data
+    private final int grid;
+    private final double cellSize;
+    private final int[][] cells;
+    private final int[] cellCounts;
+    private double[] arousals = new double[16], valences = new double[16];
+    private final List<S> songs = new ArrayList<S>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates an empty index with {@code DEFAULT_GRID} cells along each axis
+     */
+    public EmotionIndex() {
+        this(DEFAULT_GRID);
+    }
+
+    /**
+     * Creates an empty index
+     * @param grid number of cells along each axis, around the square root of the expected song count divided by two works well
+     */
+    public EmotionIndex(int grid) {
+        if (grid < 1) {
+            throw new IllegalArgumentException("Grid must have at least one cell");
+        }
+        this.grid = grid;
+        cellSize = (MAX - MIN) / grid;
+        cells = new int[grid * grid][];
+        cellCounts = new int[grid * grid];
+    }
+
+    /**
+     * Creates an index of songs whose emotions are computed, skipping {@code null}s and songs without emotions
+     * @param <S> the song type
+     * @param songs the songs
+     * @return the index
+     */
+    public static <S extends Song> EmotionIndex<S> of(S[] songs) {
+        EmotionIndex<S> index = new EmotionIndex<S>(Math.max(1, Math.min(DEFAULT_GRID, (int) Math.sqrt(songs.length / 2.0))));
+        for (S s: songs) {
+            if (s != null && s.getSummary() != null) index.insert(s);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a song at its average (arousal, valence)
+     * @param song a song whose emotions are computed
+     * @throws IllegalArgumentException if the song has no emotions yet
+     */
+    public void insert(S song) {
+        EmotionSummary summary = song.getSummary();
+        if (summary == null) {
+            throw new IllegalArgumentException("Song " + song.getTitle() + " has no emotions");
+        }
+        double a = summary.arousal().mean(), v = summary.valence().mean();
+        lock.writeLock().lock();
+        try {
+            int id = songs.size();
+            if (id == arousals.length) {
+                arousals = Arrays.copyOf(arousals, id * 2);
+                valences = Arrays.copyOf(valences, id * 2);
+            }
+            arousals[id] = a;
+            valences[id] = v;
+            songs.add(song);
+
+            int c = cell(a, v);
+            if (cells[c] == null) {
+                cells[c] = new int[4];
+            } else if (cellCounts[c] == cells[c].length) {
+                cells[c] = Arrays.copyOf(cells[c], cellCounts[c] * 2);
+            }
+            cells[c][cellCounts[c]++] = id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of songs in the index
+     * @return the number of songs
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return songs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the songs closest to a mood, ties go to the song inserted first
+     * @param arousal arousal of the mood
+     * @param valence valence of the mood
+     * @param k number of songs to find
+     * @return up to {@code k} songs, nearest first
+     */
+    public List<S> nearest(double arousal, double valence, int k) {
+        lock.readLock().lock();
+        try {
+            int n = Math.min(k, songs.size());
+            if (n <= 0) return new ArrayList<S>();
+
+            // Bounded max-heap of the best candidates so far, the worst at the root
+            int[] heapIds = new int[n];
+            double[] heapDist = new double[n];
+            int size = 0;
+
+            int cx = column(valence), cy = row(arousal);
+            for (int r = 0; r < grid; r++) {
+                // Every cell in ring r is at least (r - 1) cells from the query, which may sit anywhere in its own cell
+                if (size == n && (r - 1) * cellSize > Math.sqrt(heapDist[0])) break;
+                for (int y = cy - r; y <= cy + r; y++) {
+                    if (y < 0 || y >= grid) continue;
+                    boolean edgeRow = y == cy - r || y == cy + r;
+                    for (int x = cx - r; x <= cx + r; x += edgeRow ? 1 : 2 * Math.max(r, 1)) {
+                        if (x < 0 || x >= grid) continue;
+                        int c = y * grid + x;
+                        for (int i = 0; i<cellCounts[c]; i++) {
+                            int id = cells[c][i];
+                            double d = squaredDistance(id, arousal, valence);
+                            if (size < n) {
+                                heapIds[size] = id;
+                                heapDist[size] = d;
+                                siftUp(heapIds, heapDist, size++);
+                            } else if (worse(heapDist[0], heapIds[0], d, id)) {
+                                heapIds[0] = id;
+                                heapDist[0] = d;
+                                siftDown(heapIds, heapDist, size);
+                            }
+                        }
+                    }
+                }
+            }
+            return sorted(heapIds, heapDist, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds every song within a distance of a mood
+     * @param arousal arousal of the mood
+     * @param valence valence of the mood
+     * @param radius the maximum distance
+     * @return the songs, nearest first
+     */
+    public List<S> withinRadius(double arousal, double valence, double radius) {
+        lock.readLock().lock();
+        try {
+            double r2 = radius * radius;
+            int[] ids = new int[16];
+            double[] dist = new double[16];
+            int size = 0;
+            for (int y = row(arousal - radius); y <= row(arousal + radius); y++) {
+                for (int x = column(valence - radius); x <= column(valence + radius); x++) {
+                    int c = y * grid + x;
+                    for (int i = 0; i<cellCounts[c]; i++) {
+                        int id = cells[c][i];
+                        double d = squaredDistance(id, arousal, valence);
+                        if (d <= r2) {
+                            if (size == ids.length) {
+                                ids = Arrays.copyOf(ids, size * 2);
+                                dist = Arrays.copyOf(dist, size * 2);
+                            }
+                            ids[size] = id;
+                            dist[size++] = d;
+                        }
+                    }
+                }
+            }
+            return sorted(ids, dist, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds every song inside a region of the circumplex, bounds included
+     * @param minArousal lowest arousal
+     * @param maxArousal highest arousal
+     * @param minValence lowest valence
+     * @param maxValence highest valence
+     * @return the songs in the order they were inserted
+     */
+    public List<S> withinRectangle(double minArousal, double maxArousal, double minValence, double maxValence) {
+        lock.readLock().lock();
+        try {
+            int[] ids = new int[16];
+            int size = 0;
+            for (int y = row(minArousal); y <= row(maxArousal); y++) {
+                for (int x = column(minValence); x <= column(maxValence); x++) {
+                    int c = y * grid + x;
+                    for (int i = 0; i<cellCounts[c]; i++) {
+                        int id = cells[c][i];
+                        if (arousals[id] >= minArousal && arousals[id] <= maxArousal && valences[id] >= minValence && valences[id] <= maxValence) {
+                            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+                            ids[size++] = id;
+                        }
+                    }
+                }
+            }
+            Arrays.sort(ids, 0, size);
+            List<S> result = new ArrayList<S>(size);
+            for (int i = 0; i<size; i++) result.add(songs.get(ids[i]));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int column(double valence) {
+        return clamp((int) Math.floor((valence - MIN) / cellSize));
+    }
+
+    private int row(double arousal) {
+        return clamp((int) Math.floor((arousal - MIN) / cellSize));
+    }
+
+    private int clamp(int i) {
+        return i < 0 ? 0 : (i >= grid ? grid - 1 : i);
+    }
+
+    private int cell(double arousal, double valence) {
+        return row(arousal) * grid + column(valence);
+    }
+
+    private double squaredDistance(int id, double arousal, double valence) {
+        double da = arousals[id] - arousal, dv = valences[id] - valence;
+        return da*da + dv*dv;
+    }
+
+    /** Orders candidates by distance, then by insertion order */
+    private static boolean worse(double d1, int id1, double d2, int id2) {
+        return d1 > d2 || (d1 == d2 && id1 > id2);
+    }
+
+    private static void siftUp(int[] ids, double[] dist, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(dist[i], ids[i], dist[parent], ids[parent])) return;
+            swap(ids, dist, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] ids, double[] dist, int size) {
+        int i = 0;
+        while (true) {
+            int l = 2*i + 1, r = l + 1, worst = i;
+            if (l < size && worse(dist[l], ids[l], dist[worst], ids[worst])) worst = l;
+            if (r < size && worse(dist[r], ids[r], dist[worst], ids[worst])) worst = r;
+            if (worst == i) return;
+            swap(ids, dist, i, worst);
+            i = worst;
+        }
+    }
+
+    private static void swap(int[] ids, double[] dist, int i, int j) {
+        int t = ids[i];
+        ids[i] = ids[j];
+        ids[j] = t;
+        double d = dist[i];
+        dist[i] = dist[j];
+        dist[j] = d;
+    }
+
+    private List<S> sorted(int[] ids, double[] dist, int size) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i<size; i++) order[i] = i;
+        Arrays.sort(order, (p, q) -> worse(dist[p], ids[p], dist[q], ids[q]) ? 1 : (worse(dist[q], ids[q], dist[p], ids[p]) ? -1 : 0));
+        List<S> result = new ArrayList<S>(size);
+        for (int i: order) result.add(songs.get(ids[i]));
+        return result;
+    }
+}
@@ -0,0 +1,257 @@
+package songsorter.music;
+
+import java.util.Arrays;
+
+/**
+ * Immutable timeline of a song's emotions, one (arousal, valence) sample every 0.5 seconds, stored as two parallel
+ * primitive arrays instead of one {@code EmotionPoint} object per sample.
+ * <p>Samples are kept as {@code double}s by default. With {@code -Dsongsorter.float32=true} they are kept as
+ * {@code float}s, halving the memory of long files and large libraries at the cost of precision the model does not
+ * have anyway. {@code EmotionPoint}s are only created when {@code toPoints()} or {@code point()} is called.</p>
+ * <p>The {@code EmotionSummary} of the series is computed once, in a single pass, when the series is created.</p>
+ */
+public final class EmotionSeries {
+    /** If new series store {@code float}s, set with {@code -Dsongsorter.float32=true} */
+    public static final boolean FLOAT32 = Boolean.getBoolean("songsorter.float32");
+
+    /** Seconds between consecutive samples */
+    public static final double SAMPLE_SECONDS = 0.5;
+
+    // Private data, exactly one pair of arrays is set
+    private final double[] arousalD, valenceD;
+    private final float[] arousalF, valenceF;
+    private final int length;
+    private final EmotionSummary summary;
+
+    private EmotionSeries(double[] arousal, double[] valence) {
+        arousalD = arousal;
+        valenceD = valence;
+        arousalF = null;
+        valenceF = null;
+        length = arousal.length;
+        summary = EmotionSummary.of(this);
+    }
+
+    private EmotionSeries(float[] arousal, float[] valence) {
+        arousalD = null;
+        valenceD = null;
+        arousalF = arousal;
+        valenceF = valence;
+        length = arousal.length;
+        summary = EmotionSummary.of(this);
+    }
+
+    /**
+     * Creates a series from arrays that are not used afterwards, stored with the precision set by {@code FLOAT32}
+     * @param arousal the arousal of each sample
+     * @param valence the valence of each sample, same length as {@code arousal}
+     * @return the series, which takes ownership of the arrays when they are kept as {@code double}s
+     */
+    public static EmotionSeries of(double[] arousal, double[] valence) {
+        return of(arousal, valence, FLOAT32);
+    }
+
+    /**
+     * Creates a series from arrays that are not used afterwards
+     * @param arousal the arousal of each sample
+     * @param valence the valence of each sample, same length as {@code arousal}
+     * @param float32 if the samples should be stored as {@code float}s
+     * @return the series, which takes ownership of the arrays when they are kept as {@code double}s
+     */
+    public static EmotionSeries of(double[] arousal, double[] valence, boolean float32) {
+        if (arousal.length != valence.length) {
+            throw new IllegalArgumentException("Arousal and valence differ in length");
+        }
+        if (!float32) {
+            return new EmotionSeries(arousal, valence);
+        }
+        float[] a = new float[arousal.length];
+        float[] v = new float[valence.length];
+        for (int i = 0; i<a.length; i++) {
+            a[i] = (float) arousal[i];
+            v[i] = (float) valence[i];
+        }
+        return new EmotionSeries(a, v);
+    }
+
+    /**
+     * Creates a series from single precision arrays that are not used afterwards, such as a binary reply of the
+     * model, stored with the precision set by {@code FLOAT32}
+     * @param arousal the arousal of each sample
+     * @param valence the valence of each sample, same length as {@code arousal}
+     * @return the series, which takes ownership of the arrays when they are kept as {@code float}s
+     */
+    public static EmotionSeries of(float[] arousal, float[] valence) {
+        if (arousal.length != valence.length) {
+            throw new IllegalArgumentException("Arousal and valence differ in length");
+        }
+        if (FLOAT32) {
+            return new EmotionSeries(arousal, valence);
+        }
+        double[] a = new double[arousal.length];
+        double[] v = new double[valence.length];
+        for (int i = 0; i<a.length; i++) {
+            a[i] = arousal[i];
+            v[i] = valence[i];
+        }
+        return new EmotionSeries(a, v);
+    }
+
+    /**
+     * Creates a series from {@code EmotionPoint}s, stored with the precision set by {@code FLOAT32}
+     * @param points one {@code EmotionPoint} per sample
+     * @return the series
+     */
+    public static EmotionSeries of(EmotionPoint[] points) {
+        double[] a = new double[points.length];
+        double[] v = new double[points.length];
+        for (int i = 0; i<points.length; i++) {
+            a[i] = points[i].getArousal();
+            v[i] = points[i].getValence();
+        }
+        return of(a, v);
+    }
+
+    /**
+     * Gets the number of samples
+     * @return the number of samples
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Checks if the samples are stored as {@code float}s
+     * @return if the series is single precision
+     */
+    public boolean isFloat32() {
+        return arousalF != null;
+    }
+
+    /**
+     * Gets the arousal of one sample
+     * @param i index of the sample
+     * @return the arousal
+     */
+    public double arousal(int i) {
+        return arousalD != null ? arousalD[i] : arousalF[i];
+    }
+
+    /**
+     * Gets the valence of one sample
+     * @param i index of the sample
+     * @return the valence
+     */
+    public double valence(int i) {
+        return valenceD != null ? valenceD[i] : valenceF[i];
+    }
+
+    /**
+     * Gets the time of one sample from the start of the clip
+     * @param i index of the sample
+     * @return the time in seconds
+     */
+    public static double time(int i) {
+        return i * SAMPLE_SECONDS;
+    }
+
+    /**
+     * Copies the arousals into a new array
+     * @return the arousal of each sample
+     */
+    public double[] arousals() {
+        return copy(arousalD, arousalF);
+    }
+
+    /**
+     * Copies the valences into a new array
+     * @return the valence of each sample
+     */
+    public double[] valences() {
+        return copy(valenceD, valenceF);
+    }
+
+    /**
+     * Creates an {@code EmotionPoint} for one sample
+     * @param i index of the sample
+     * @return a new {@code EmotionPoint}
+     */
+    public EmotionPoint point(int i) {
+        return new EmotionPoint(arousal(i), valence(i));
+    }
+
+    /**
+     * Creates an {@code EmotionPoint} for every sample, for code that still works with points
+     * @return a new array of {@code EmotionPoint}s
+     */
+    public EmotionPoint[] toPoints() {
+        EmotionPoint[] points = new EmotionPoint[length];
+        for (int i = 0; i<length; i++) {
+            points[i] = point(i);
+        }
+        return points;
+    }
+
+    /**
+     * Gets the summary statistics, computed once when the series was created
+     * @return the {@code EmotionSummary} of the series
+     */
+    public EmotionSummary summary() {
+        return summary;
+    }
+
+    /**
+     * Gets the mean arousal from the summary
+     * @return the mean arousal, or {@code NaN} if there are no samples
+     */
+    public double meanArousal() {
+        return summary.arousal().mean();
+    }
+
+    /**
+     * Gets the mean valence from the summary
+     * @return the mean valence, or {@code NaN} if there are no samples
+     */
+    public double meanValence() {
+        return summary.valence().mean();
+    }
+
+    /**
+     * Estimates the heap used by the sample arrays
+     * @return the size of both arrays in bytes
+     */
+    public long sampleBytes() {
+        return 2L * length * (isFloat32() ? Float.BYTES : Double.BYTES);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EmotionSeries s) || s.length != length) return false;
+        for (int i = 0; i<length; i++) {
+            if (Double.compare(arousal(i), s.arousal(i)) != 0 || Double.compare(valence(i), s.valence(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(arousals()) + Arrays.hashCode(valences());
+    }
+
+    @Override
+    public String toString() {
+        return "EmotionSeries[" + length + " samples" + (isFloat32() ? ", float32" : "") + "]";
+    }
+
+    private static double[] copy(double[] d, float[] f) {
+        if (d != null) {
+            return d.clone();
+        }
+        double[] out = new double[f.length];
+        for (int i = 0; i<f.length; i++) out[i] = f[i];
+        return out;
+    }
+}
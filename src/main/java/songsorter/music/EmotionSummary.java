@@ -0,0 +1,156 @@
+package songsorter.music;
+
+/**
+ * Immutable summary statistics of an {@code EmotionSeries}, computed in a single pass when the series is created so
+ * the UI, sorting and distance code never walk the samples again.
+ * <p>Each of arousal and valence gets its mean, population variance, range, and a least squares line against time,
+ * where sample {@code i} is at {@code EmotionSeries.time(i)} seconds. Means and co-moments are accumulated with
+ * Welford's method to stay accurate for long series.</p>
+ */
+public final class EmotionSummary {
+
+    /**
+     * Statistics of one dimension of the series
+     * @param mean the mean
+     * @param variance the population variance
+     * @param min the smallest sample
+     * @param max the largest sample
+     * @param r Pearson's correlation coefficient against time, 0 if undefined
+     * @param slope slope of the regression line against time, per second
+     * @param intercept value of the regression line at time 0
+     */
+    public record Channel(double mean, double variance, double min, double max, double r, double slope, double intercept) {
+        /**
+         * Gets the population standard deviation
+         * @return the square root of the variance
+         */
+        public double sd() {
+            return Math.sqrt(variance);
+        }
+
+        /**
+         * Evaluates the regression line
+         * @param t time in seconds
+         * @return the predicted value at {@code t}
+         */
+        public double predict(double t) {
+            return intercept + slope * t;
+        }
+    }
+
+    /** Summary of a series with no samples, every statistic is {@code NaN} */
+    public static final EmotionSummary EMPTY = new EmotionSummary(0,
+        new Channel(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN),
+        new Channel(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN));
+
+    // Private data
+    private final int count;
+    private final Channel arousal, valence;
+
+    private EmotionSummary(int count, Channel arousal, Channel valence) {
+        this.count = count;
+        this.arousal = arousal;
+        this.valence = valence;
+    }
+
+    /**
+     * Computes the summary of a series in one pass over its samples
+     * @param s the series
+     * @return the summary
+     */
+    public static EmotionSummary of(EmotionSeries s) {
+        int n = s.length();
+        if (n == 0) {
+            return EMPTY;
+        }
+
+        double meanT = 0, m2T = 0;
+        double meanA = 0, m2A = 0, cA = 0, minA = Double.POSITIVE_INFINITY, maxA = Double.NEGATIVE_INFINITY;
+        double meanV = 0, m2V = 0, cV = 0, minV = Double.POSITIVE_INFINITY, maxV = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i<n; i++) {
+            double t = EmotionSeries.time(i);
+            double a = s.arousal(i);
+            double v = s.valence(i);
+            int k = i + 1;
+
+            double dT = t - meanT;
+            meanT += dT / k;
+            double dA = a - meanA;
+            meanA += dA / k;
+            double dV = v - meanV;
+            meanV += dV / k;
+
+            // Co-moments use the old deviation of one variable and the new deviation of the other
+            m2T += dT * (t - meanT);
+            m2A += dA * (a - meanA);
+            m2V += dV * (v - meanV);
+            cA += dT * (a - meanA);
+            cV += dT * (v - meanV);
+
+            if (a < minA) minA = a;
+            if (a > maxA) maxA = a;
+            if (v < minV) minV = v;
+            if (v > maxV) maxV = v;
+        }
+
+        return new EmotionSummary(n,
+            channel(n, meanT, m2T, meanA, m2A, cA, minA, maxA),
+            channel(n, meanT, m2T, meanV, m2V, cV, minV, maxV));
+    }
+
+    private static Channel channel(int n, double meanT, double m2T, double mean, double m2, double c, double min, double max) {
+        double slope = m2T == 0 ? 0 : c / m2T;
+        double r = m2T == 0 || m2 == 0 ? 0 : c / Math.sqrt(m2T * m2);
+        // The regression line passes through (mean time, mean value)
+        double intercept = mean - slope * meanT;
+        return new Channel(mean, m2 / n, min, max, r, slope, intercept);
+    }
+
+    /**
+     * Gets the number of samples summarized
+     * @return the sample count
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Gets the length of the summarized clip
+     * @return the time of the last sample in seconds, 0 if there are none
+     */
+    public double duration() {
+        return count == 0 ? 0 : EmotionSeries.time(count - 1);
+    }
+
+    /**
+     * Gets the arousal statistics
+     * @return the arousal {@code Channel}
+     */
+    public Channel arousal() {
+        return arousal;
+    }
+
+    /**
+     * Gets the valence statistics
+     * @return the valence {@code Channel}
+     */
+    public Channel valence() {
+        return valence;
+    }
+
+    /**
+     * Distance between the mean (arousal, valence) of two summaries
+     * @param o the other summary
+     * @return the Euclidean distance
+     */
+    public double distance(EmotionSummary o) {
+        double x = arousal.mean() - o.arousal.mean();
+        double y = valence.mean() - o.valence.mean();
+        return Math.sqrt(x*x + y*y);
+    }
+
+    @Override
+    public String toString() {
+        return "EmotionSummary[n=" + count + ", arousal=" + arousal + ", valence=" + valence + "]";
+    }
+}
@@ -0,0 +1,266 @@
+package songsorter.music;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import songsorter.pipeline.Pipeline;
+import songsorter.python.PythonEnvHandler;
+import songsorter.queue.BoundedBlockingQueue;
+
+/**
+ * Imports every mp3 under a folder as a {@code LocalPlaylist}, for libraries of tens of thousands of files.
+ * <p>The folder tree is walked in parallel on a {@code ForkJoinPool}, one task per directory, and files are sent
+ * in batches of up to {@code batchSize} from the same directory straight into a {@code Pipeline}. Batches are
+ * analyzed by one inference thread per Python worker, and results from the {@code EmotionCache} need no Python at all.
+ * The walk waits while the queue to inference is full, so paths are never all held in memory at once.</p>
+ */
+public class LocalLibrary {
+    /** Extensions of the files that are imported */
+    public static final String[] EXTENSIONS = {".mp3"};
+
+    /** Default number of directory walkers, set with {@code -Dsongsorter.library.walkers=N} */
+    public static final int WALKERS = Integer.getInteger("songsorter.library.walkers", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Receives the progress of an import, called from the pipeline threads
+     */
+    public interface Listener {
+        /**
+         * Called whenever more files are found
+         * @param found number of files found so far
+         */
+        default void onFound(int found) {}
+
+        /**
+         * Called for every song once its emotions are computed
+         * @param song the analyzed song
+         * @param analyzed number of songs analyzed so far, including this one
+         * @param found number of files found so far
+         */
+        void onSong(Song song, int analyzed, int found);
+
+        /**
+         * Called for every file that is left out, such as one the model failed on
+         * @param path the file
+         * @param reason why the file was left out
+         */
+        default void onError(String path, String reason) {}
+    }
+
+    private final PythonEnvHandler penv;
+    private final int batchSize, inference, walkers, capacity;
+    private volatile Pipeline pipeline;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates an importer with {@code SorterPlaylist.DEFAULT_BATCH_SIZE}, one inference thread per worker in the pool
+     * of {@code penv}, and {@code WALKERS} directory walkers
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     */
+    public LocalLibrary(PythonEnvHandler penv) {
+        this(penv, SorterPlaylist.DEFAULT_BATCH_SIZE, penv.getPool().size(), WALKERS, PlaylistPipeline.QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates an importer
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     * @param batchSize maximum number of files per model invocation
+     * @param inference number of threads computing emotions
+     * @param walkers number of threads walking the folder tree
+     * @param capacity capacity of each queue between stages, in batches
+     */
+    public LocalLibrary(PythonEnvHandler penv, int batchSize, int inference, int walkers, int capacity) {
+        this.penv = penv;
+        this.batchSize = batchSize;
+        this.inference = inference;
+        this.walkers = walkers;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Checks if a file would be imported
+     * @param p path to the file
+     * @return if the file name has one of {@code EXTENSIONS}
+     */
+    public static boolean isSupported(Path p) {
+        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String ext: EXTENSIONS) {
+            if (name.endsWith(ext)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Imports and analyzes every supported file under a folder and waits for it to finish. Files that cannot be
+     * analyzed are reported to the pipeline's error handler and left out.
+     * @param root the folder
+     * @param listener receives each song as it is analyzed
+     * @return the analyzed songs in the order they finished, which is not sorted yet
+     * @throws IOException If {@code root} is not a readable directory or walking it fails
+     * @throws InterruptedException If cancelled or interrupted while waiting
+     */
+    public LocalPlaylist run(Path root, Listener listener) throws IOException, InterruptedException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException(root + " is not a directory");
+        }
+
+        List<Song> songs = new ArrayList<Song>();
+        AtomicInteger found = new AtomicInteger();
+        Pipeline pl = new Pipeline(capacity);
+        pipeline = pl;
+        // A cancel() from here on reaches pl, which keeps the stages added below from starting
+        if (cancelled) {
+            throw new InterruptedException("Import cancelled");
+        }
+        pl.onError((stage, failed, e) -> {
+            System.out.println("Pipeline stage " + stage + " failed: " + e);
+            if (failed instanceof List<?> batch) {
+                for (Object p: batch) listener.onError(p.toString(), e.toString());
+            } else if (failed instanceof Song s) {
+                listener.onError(s.getFilePath(), e.toString());
+            }
+        });
+
+        BoundedBlockingQueue<List<Path>> batches = pl.source("walk", out -> {
+            ForkJoinPool walkPool = new ForkJoinPool(walkers);
+            try {
+                walkPool.invoke(new Walk(root, batch -> {
+                    listener.onFound(found.addAndGet(batch.size()));
+                    out.emit(batch);
+                }));
+            } finally {
+                walkPool.shutdownNow();
+            }
+        });
+
+        BoundedBlockingQueue<Song> analyzed = pl.stage("infer", inference, batches, (List<Path> batch, Pipeline.Emitter<Song> out) -> {
+            List<String> paths = new ArrayList<String>(batch.size());
+            for (Path p: batch) paths.add(p.toString());
+            EmotionSeries[] results = penv.computeEmotions(paths);
+            for (int i = 0; i<results.length; i++) {
+                if (results[i] == null) {
+                    System.out.println("Python failed on " + paths.get(i) + ", it will be excluded from results");
+                    listener.onError(paths.get(i), "Python failed on the clip");
+                    continue;
+                }
+                try {
+                    Song s = new Song(paths.get(i));
+                    s.setEmotions(results[i]);
+                    out.emit(s);
+                } catch (UnsupportedAudioFileException e) {
+                    System.out.println(paths.get(i) + " is not supported and will be excluded from results");
+                    listener.onError(paths.get(i), "Unsupported audio file");
+                }
+            }
+        });
+
+        pl.sink("collect", 1, analyzed, song -> {
+            songs.add(song);
+            listener.onSong(song, songs.size(), found.get());
+        });
+
+        pl.await();
+        if (cancelled) {
+            throw new InterruptedException("Import cancelled");
+        }
+        if (pl.getSourceFailure() != null) {
+            throw new IOException("Walking " + root + " failed", pl.getSourceFailure());
+        }
+        return new LocalPlaylist(root.getFileName() == null ? root.toString() : root.getFileName().toString(), songs.toArray(new Song[0]));
+    }
+
+    /**
+     * Stops a running import, discarding files that are not analyzed yet
+     */
+    public void cancel() {
+        cancelled = true;
+        Pipeline pl = pipeline;
+        if (pl != null) {
+            pl.cancel();
+        }
+    }
+
+    /**
+     * Gets the running pipeline, for monitoring its queues and errors
+     * @return the pipeline, or {@code null} before {@code run()} is called
+     */
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Receives batches of files found by the walk
+     */
+    @FunctionalInterface
+    private interface BatchSink {
+        void accept(List<Path> batch) throws InterruptedException;
+    }
+
+    /**
+     * Lists one directory, forks a task for each subdirectory and sends its supported files in batches. Stops listing
+     * once the import is cancelled, since the pool cannot be interrupted and dropped batches do not end the walk.
+     */
+    private class Walk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final BatchSink sink;
+
+        Walk(Path dir, BatchSink sink) {
+            this.dir = dir;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            List<Walk> children = new ArrayList<Walk>();
+            List<Path> batch = new ArrayList<Path>(batchSize);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p: entries) {
+                    if (cancelled) {
+                        break;
+                    }
+                    // Linked folders are not followed, a link back to a parent would be walked forever
+                    if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                        Walk w = new Walk(p, sink);
+                        w.fork();
+                        children.add(w);
+                    } else if (isSupported(p) && Files.isRegularFile(p)) {
+                        batch.add(p);
+                        if (batch.size() == batchSize) {
+                            sink.accept(batch);
+                            batch = new ArrayList<Path>(batchSize);
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    sink.accept(batch);
+                }
+            } catch (IOException e) {
+                System.out.println("Skipping unreadable folder " + dir + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Walk of " + dir + " interrupted"));
+            }
+            for (Walk w: children) {
+                w.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package songsorter.music;
+
+import songsorter.jfr.SortEvent;
+import songsorter.metrics.Metrics;
+import songsorter.tour.MultiStartSolver;
+import songsorter.tour.TourPlanner;
+import songsorter.tour.TourResult;
+
+/**
+ * A playlist of local files built by a {@code LocalLibrary}, sorted with the same {@code songsorter.tour} solvers
+ * as {@code SorterPlaylist}
+ */
+public class LocalPlaylist {
+    private Song[] songs;
+    private String name;
+    private TourPlanner tourPlanner = TourPlanner.defaultPlanner();
+    private TourResult lastTour;
+    private MultiStartSolver.Result lastMultiStart;
+    private EmotionIndex<Song> index;
+
+    /**
+     * Constructs a playlist from songs whose emotions are computed
+     * @param name playlist name, typically the folder name
+     * @param songs the songs
+     */
+    public LocalPlaylist(String name, Song[] songs) {
+        this.name = name;
+        this.songs = songs;
+    }
+
+    /**
+     * Gets a specifc {@code Song} at an index
+     * @param i Index
+     * @return the {@code Song} at specified index
+     */
+    public Song get(int i) {
+        return songs[i];
+    }
+
+    /**
+     * Gets the number of songs in the playlist
+     * @return length of the playlist
+     */
+    public int length() {
+        return songs.length;
+    }
+
+    /**
+     * Gets the name of the playlist
+     * @return playlist name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Sets how {@code sort()} builds the playlist order
+     * @param planner the solver and improver to use, see {@code TourPlanner.defaultPlanner()}
+     */
+    public void setTourPlanner(TourPlanner planner) {
+        tourPlanner = planner;
+    }
+
+    /**
+     * Gets the result of the last sort, with the tour length and time taken
+     * @return the last tour, or {@code null} if the playlist has not been sorted
+     */
+    public TourResult lastTour() {
+        return lastTour;
+    }
+
+    /**
+     * Gets the result of the last {@code sort(int, long)}, with the tour length from every start
+     * @return the last multi-start result, or {@code null} if the playlist has not been sorted that way
+     */
+    public MultiStartSolver.Result lastMultiStart() {
+        return lastMultiStart;
+    }
+
+    /**
+     * Gets an index of the songs for k-nearest, radius and rectangle queries by mood, built on first use
+     * @return the {@code EmotionIndex} of the playlist
+     */
+    public synchronized EmotionIndex<Song> index() {
+        if (index == null) {
+            index = EmotionIndex.of(songs);
+        }
+        return index;
+    }
+
+    /**
+     * Sorts the playlist like {@code SorterPlaylist.sort()}, from a random song or with the multi-start settings
+     * {@code -Dsongsorter.sort.starts} and {@code -Dsongsorter.sort.seed}
+     */
+    public void sort() {
+        if (SorterPlaylist.SORT_STARTS > 1 || SorterPlaylist.SORT_SEED != null) {
+            sort(SorterPlaylist.SORT_STARTS, SorterPlaylist.SORT_SEED != null ? SorterPlaylist.SORT_SEED : System.nanoTime());
+            return;
+        }
+
+        int[] present = SongOrder.present(songs);
+        if (present.length == 0) return;
+        double[][] coords = SongOrder.coordinates(songs, present);
+
+        SortEvent event = new SortEvent();
+        event.begin();
+        lastTour = tourPlanner.plan(coords[0], coords[1], (int) (Math.random()*present.length));
+        SongOrder.commit(event, name, present.length, 1, lastTour);
+        Metrics.shared().histogram("sort").record(lastTour.totalNanos());
+        songs = SongOrder.reorder(songs, present, lastTour.order());
+    }
+
+    /**
+     * Sorts the playlist from several start songs in parallel and keeps the shortest tour, see {@code SorterPlaylist.sort(int, long)}
+     * @param starts number of start songs to try
+     * @param seed seed for choosing the start songs
+     */
+    public void sort(int starts, long seed) {
+        int[] present = SongOrder.present(songs);
+        if (present.length == 0) return;
+        double[][] coords = SongOrder.coordinates(songs, present);
+
+        SortEvent event = new SortEvent();
+        event.begin();
+        lastMultiStart = new MultiStartSolver(tourPlanner).solve(coords[0], coords[1], starts, seed);
+        lastTour = lastMultiStart.best();
+        SongOrder.commit(event, name, present.length, Math.min(starts, present.length), lastTour);
+        Metrics.shared().histogram("sort").record(lastMultiStart.nanos());
+        songs = SongOrder.reorder(songs, present, lastTour.order());
+    }
+}
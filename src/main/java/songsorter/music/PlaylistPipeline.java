@@ -0,0 +1,240 @@
+package songsorter.music;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.hc.core5.http.ParseException;
+
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.model_objects.specification.Playlist;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import songsorter.pipeline.Pipeline;
+import songsorter.python.PythonEnvHandler;
+import songsorter.queue.BoundedBlockingQueue;
+
+/**
+ * Loads and analyzes a Spotify playlist as four overlapping stages: metadata fetch, clip download, inference and
+ * rendering. Songs reach the listener as soon as they are analyzed instead of after the whole playlist is loaded.
+ * Inference takes whichever downloaded clips are waiting, up to the batch size, and analyzes them in one model
+ * invocation, as {@code SorterPlaylist.setEmotions()} does.
+ * Each stage has its own parallelism and the stages are connected by bounded queues, so a slow stage holds back
+ * the stages before it rather than letting work pile up in memory.
+ */
+public class PlaylistPipeline {
+    /** Default number of clip downloads at once, set with {@code -Dsongsorter.pipeline.downloads=N} */
+    public static final int DOWNLOAD_PARALLELISM = Integer.getInteger("songsorter.pipeline.downloads", SorterPlaylist.MAX_CONCURRENT_DOWNLOADS);
+    /** Default capacity of the queues between stages, set with {@code -Dsongsorter.pipeline.queue=N} */
+    public static final int QUEUE_CAPACITY = Integer.getInteger("songsorter.pipeline.queue", 32);
+
+    /**
+     * Receives the progress of a {@code PlaylistPipeline}
+     */
+    public interface Listener {
+        /**
+         * Called once the playlist metadata is fetched, before any song
+         * @param name the playlist name
+         * @param total the number of items in the playlist, including ones that may be excluded
+         */
+        default void onStart(String name, int total) {}
+
+        /**
+         * Called from the render stage for every song once its emotions are computed, in completion order
+         * @param song the analyzed song
+         * @param index position of the song in the playlist
+         */
+        void onSong(SpotifySong song, int index);
+
+        /**
+         * Called from the stage threads for every song that is left out, such as one without a preview, one whose
+         * clip failed to download or one the model failed on
+         * @param index position of the song in the playlist
+         * @param title the track name
+         * @param reason why the song was left out
+         */
+        default void onError(int index, String title, String reason) {}
+    }
+
+    /** A playlist item moving through the stages, keeping its position so the final order matches the playlist */
+    private record Item(int index, Track track, SpotifySong song) {
+        String title() {
+            return song != null ? song.getTitle() : track.getName();
+        }
+    }
+
+    private final SpotifyApi sapi;
+    private final PythonEnvHandler penv;
+    private final int downloads, inference, batchSize, capacity;
+    private volatile Pipeline pipeline;
+    private volatile EmotionIndex<SpotifySong> index = new EmotionIndex<SpotifySong>();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a pipeline with the default parallelism, one inference thread per worker in the pool of {@code penv},
+     * and batches of up to {@code SorterPlaylist.DEFAULT_BATCH_SIZE}
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     */
+    public PlaylistPipeline(SpotifyApi sapi, PythonEnvHandler penv) {
+        this(sapi, penv, DOWNLOAD_PARALLELISM, penv.getPool().size(), QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline with batches of up to {@code SorterPlaylist.DEFAULT_BATCH_SIZE}
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     * @param downloads number of threads downloading clips and album art
+     * @param inference number of threads computing emotions
+     * @param capacity capacity of each queue between stages
+     */
+    public PlaylistPipeline(SpotifyApi sapi, PythonEnvHandler penv, int downloads, int inference, int capacity) {
+        this(sapi, penv, downloads, inference, SorterPlaylist.DEFAULT_BATCH_SIZE, capacity);
+    }
+
+    /**
+     * Creates a pipeline
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     * @param downloads number of threads downloading clips and album art
+     * @param inference number of threads computing emotions
+     * @param batchSize maximum number of clips per model invocation
+     * @param capacity capacity of each queue between stages
+     */
+    public PlaylistPipeline(SpotifyApi sapi, PythonEnvHandler penv, int downloads, int inference, int batchSize, int capacity) {
+        this.sapi = sapi;
+        this.penv = penv;
+        this.downloads = downloads;
+        this.inference = inference;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs the pipeline over a playlist and waits for it to finish
+     * @param url Spotify url to playlist
+     * @param listener receives each song as it is analyzed
+     * @return the analyzed playlist in its original order, without tracks that have no preview or failed
+     * @throws ParseException If underlying service fails
+     * @throws SpotifyWebApiException If an http error occurs int eh api request
+     * @throws IOException If api output fails to be read
+     * @throws URISyntaxException If URL is malformed
+     * @throws InterruptedException If cancelled or interrupted while waiting
+     */
+    public SorterPlaylist run(String url, Listener listener) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException, InterruptedException {
+        String id = SorterPlaylist.getPlaylistID(url);
+        Playlist p = SpotifyCalls.execute("getPlaylist", id, 0, () -> sapi.getPlaylist(id).build().execute());
+        listener.onStart(p.getName(), p.getTracks().getTotal());
+
+        ConcurrentSkipListMap<Integer, SpotifySong> results = new ConcurrentSkipListMap<Integer, SpotifySong>();
+        EmotionIndex<SpotifySong> songIndex = new EmotionIndex<SpotifySong>();
+        index = songIndex;
+        Pipeline pl = new Pipeline(capacity);
+        pipeline = pl;
+        // A cancel() from here on reaches pl, which keeps the stages added below from starting
+        if (cancelled) {
+            throw new InterruptedException("Pipeline cancelled");
+        }
+        pl.onError((stage, failed, e) -> {
+            System.out.println("Pipeline stage " + stage + " failed: " + e);
+            // The infer stage fails a whole batch at once
+            List<?> items = failed instanceof List<?> batch ? batch : List.of(failed);
+            for (Object o: items) {
+                if (o instanceof Item item) listener.onError(item.index(), item.title(), e.toString());
+            }
+        });
+
+        BoundedBlockingQueue<Item> tracks = pl.source("fetch", out -> {
+            SorterPlaylist.fetchPages(sapi, id, p.getTracks(), (page, offset) -> {
+                for (int i = 0; i<page.length; i++) {
+                    if (page[i].getTrack() instanceof Track track) {
+                        try {
+                            out.emit(new Item(offset+i, track, null));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    }
+                }
+            });
+        });
+
+        BoundedBlockingQueue<Item> downloaded = pl.stage("download", downloads, tracks, (Item item, Pipeline.Emitter<Item> out) -> {
+            try {
+                out.emit(new Item(item.index(), null, new SpotifySong(item.track())));
+            } catch (NoPreviewException e) {
+                System.out.println("A song does not have a preview and will be excluded from results");
+                listener.onError(item.index(), item.title(), "No preview");
+            }
+        });
+
+        BoundedBlockingQueue<Item> analyzed = pl.batchStage("infer", inference, downloaded, batchSize, (List<Item> batch, Pipeline.Emitter<Item> out) -> {
+            List<String> paths = new ArrayList<String>(batch.size());
+            for (Item item: batch) paths.add(item.song().getFilePath());
+            EmotionSeries[] emotions = penv.computeEmotions(paths);
+            for (int i = 0; i<emotions.length; i++) {
+                if (emotions[i] == null) {
+                    System.out.println("Python failed on " + batch.get(i).title() + ", it will be excluded from results");
+                    listener.onError(batch.get(i).index(), batch.get(i).title(), "Python failed on the clip");
+                    continue;
+                }
+                batch.get(i).song().setEmotions(emotions[i]);
+                out.emit(batch.get(i));
+            }
+        });
+
+        pl.sink("render", 1, analyzed, item -> {
+            results.put(item.index(), item.song());
+            songIndex.insert(item.song());
+            listener.onSong(item.song(), item.index());
+        });
+
+        pl.await();
+        if (cancelled) {
+            throw new InterruptedException("Pipeline cancelled");
+        }
+        // A page that failed to load would otherwise leave a shorter playlist that looks complete
+        rethrow(pl.getSourceFailure());
+        return new SorterPlaylist(p.getName(), results.values().toArray(new SpotifySong[0]));
+    }
+
+    private static void rethrow(Exception e) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException {
+        if (e == null) return;
+        if (e instanceof ParseException pe) throw pe;
+        if (e instanceof SpotifyWebApiException se) throw se;
+        if (e instanceof IOException ie) throw ie;
+        if (e instanceof URISyntaxException ue) throw ue;
+        if (e instanceof RuntimeException re) throw re;
+        throw new IOException("Fetching the playlist failed", e);
+    }
+
+    /**
+     * Stops a running pipeline, discarding songs that are not analyzed yet
+     */
+    public void cancel() {
+        cancelled = true;
+        Pipeline pl = pipeline;
+        if (pl != null) {
+            pl.cancel();
+        }
+    }
+
+    /**
+     * Gets the index of the songs analyzed so far by the current or last run, which grows as songs are analyzed
+     * @return the {@code EmotionIndex} of analyzed songs
+     */
+    public EmotionIndex<SpotifySong> getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the running pipeline, for monitoring its queues and errors
+     * @return the pipeline, or {@code null} before {@code run()} is called
+     */
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+}
@@ -6,8 +6,6 @@ import songsorter.python.PythonEnvHandler;
 import songsorter.python.PythonError;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.stream.DoubleStream; 
 
 /**
  * Class to represent any generic song, file based or spotify based. Primarily used for file based songs. 
@@ -15,7 +13,7 @@ import java.util.stream.DoubleStream;
 public class Song {
     // Private data
     private String filePath, title; 
-    private EmotionPoint[] emotions; 
+    private volatile EmotionSeries emotions; 
 
     /**
      * Default constructor for subclasses
@@ -87,31 +85,66 @@ public class Song {
 
     /**
      * Gets the array of {@code EmotionPoint}s which represent annotatiosn every 0.5 seconds of the mp3
-     * @return array of {@code EmotionPoint}s
+     * <p>The points are created from {@code getEmotionSeries()} on every call, prefer the series where possible.</p>
+     * @return array of {@code EmotionPoint}s, or {@code null} if emotions are not computed yet
      */
     public EmotionPoint[] getEmotions() {
+        EmotionSeries e = emotions; 
+        return e == null ? null : e.toPoints();
+    }
+
+    /**
+     * Gets the emotions of the song as primitive arrays, one sample every 0.5 seconds of the mp3
+     * @return the {@code EmotionSeries}, or {@code null} if emotions are not computed yet
+     */
+    public EmotionSeries getEmotionSeries() {
         return this.emotions;
     }
 
     /**
-     * (Re)compute the emotions of the Song object
+     * (Re)compute the emotions of the Song object. Safe to call from the inference threads of a {@code PythonEnvHandler}. 
      * @param penv the {@code PythonEnvHandler} that will be used for emotion computation
      * @throws PythonError if underlying Python service fails
      * @throws IOException If reading/writing to CLI fails
      * @throws InterruptedException If underlying Python script fails mid-execution
      */
-    public void setEmotions(PythonEnvHandler penv) throws PythonError, IOException, InterruptedException {
+    public synchronized void setEmotions(PythonEnvHandler penv) throws PythonError, IOException, InterruptedException {
     	if (emotions == null) {
-    		emotions = PythonEnvHandler.parseOut(penv.runCommand(filePath));
+    		emotions = penv.computeEmotions(filePath);
     	}
     }
     
+    /**
+     * Sets emotions that were computed elsewhere, such as in a batch by {@code PythonEnvHandler.computeEmotions(List)}
+     * @param e the {@code EmotionSeries}, one sample every 0.5 seconds of the mp3
+     */
+    public synchronized void setEmotions(EmotionSeries e) {
+        emotions = e; 
+    }
+
+    /**
+     * Sets emotions from {@code EmotionPoint}s, which are converted to an {@code EmotionSeries}
+     * @param e array of {@code EmotionPoint}s, one every 0.5 seconds of the mp3
+     */
+    public synchronized void setEmotions(EmotionPoint[] e) {
+        emotions = EmotionSeries.of(e); 
+    }
+    
+    /**
+     * Gets the summary statistics of the song's emotions, computed once when the emotions were set
+     * @return the {@code EmotionSummary}, or {@code null} if emotions are not computed yet
+     */
+    public EmotionSummary getSummary() {
+        EmotionSeries e = emotions; 
+        return e == null ? null : e.summary();
+    }
+    
     /**
      * Get only the arousals of the song as an array
      * @return An array of double's representing only the {@code getArousal()}s of each {@code EmotionPoint}
      */
     public double[] getArousalAsList() {
-    	return Arrays.stream(emotions).flatMapToDouble(point -> DoubleStream.of(point.getArousal())).toArray(); 
+    	return emotions.arousals(); 
     }
     
     /**
@@ -119,23 +152,23 @@ public class Song {
      * @return An array of double's representing only the {@code getValences()}s of each {@code EmotionPoint}
      */
     public double[] getValenceAsList() {
-    	return Arrays.stream(emotions).flatMapToDouble(point -> DoubleStream.of(point.getValence())).toArray(); 
+    	return emotions.valences(); 
     }
     
     /**
-     * Works by compptuing the average of {@code getArousalAsList()}
+     * Gets the average arousal from {@code getSummary()}
      * @return the average arousal of the song
      */
     public double getAverageArousal() {
-    	return (double) (DoubleStream.of(getArousalAsList()).sum())/emotions.length; 
+    	return emotions.meanArousal(); 
     }
     
     /**
-     * Works by compptuing the average of {@code getValenceAsList()}
+     * Gets the average valence from {@code getSummary()}
      * @return the average valence of the song
      */
     public double getAverageValence() {
-    	return (double) (DoubleStream.of(getValenceAsList()).sum())/emotions.length; 
+    	return emotions.meanValence(); 
     } 
 
     /**
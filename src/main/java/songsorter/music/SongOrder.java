@@ -0,0 +1,83 @@
+package songsorter.music;
+
+import java.util.Arrays;
+
+import songsorter.jfr.SortEvent;
+import songsorter.tour.TourResult;
+
+/**
+ * Helpers shared by the playlist types to hand songs to the {@code songsorter.tour} solvers and apply the result
+ */
+final class SongOrder {
+
+    private SongOrder() {}
+
+    /**
+     * Gets the indices of songs that are not missing
+     * @param songs the songs, which may contain {@code null}s
+     * @return indices of the non-null songs in order
+     */
+    static int[] present(Song[] songs) {
+        int[] present = new int[songs.length];
+        int n = 0;
+        for (int i = 0; i<songs.length; i++) {
+            if (songs[i] != null) present[n++] = i;
+        }
+        return Arrays.copyOf(present, n);
+    }
+
+    /**
+     * Gets the mean arousals and valences of the given songs from their summaries
+     * @param songs the songs
+     * @param present indices of the songs to use, from {@code present()}
+     * @return two arrays, the arousals then the valences, indexed like {@code present}
+     */
+    static double[][] coordinates(Song[] songs, int[] present) {
+        double[] arousals = new double[present.length];
+        double[] valences = new double[present.length];
+        for (int i = 0; i<present.length; i++) {
+            EmotionSummary summary = songs[present[i]].getSummary();
+            arousals[i] = summary.arousal().mean();
+            valences[i] = summary.valence().mean();
+        }
+        return new double[][] {arousals, valences};
+    }
+
+    /**
+     * Puts songs in tour order, with missing songs at the end
+     * @param <S> the song type
+     * @param songs the songs
+     * @param present indices of the songs that were toured, from {@code present()}
+     * @param order the tour over {@code present}
+     * @return a new array of the same type and length in tour order
+     */
+    static <S extends Song> S[] reorder(S[] songs, int[] present, int[] order) {
+        S[] sorted = songs.clone();
+        Arrays.fill(sorted, null);
+        for (int i = 0; i<order.length; i++) {
+            sorted[i] = songs[present[order[i]]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Ends a sort event and commits it if Flight Recorder is recording it
+     * @param event the event, begun before the tour was built
+     * @param playlist playlist name
+     * @param songs number of songs toured
+     * @param starts number of start songs tried
+     * @param tour the tour that was kept
+     */
+    static void commit(SortEvent event, String playlist, int songs, int starts, TourResult tour) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.playlist = playlist;
+            event.songs = songs;
+            event.starts = starts;
+            event.method = tour.method();
+            event.constructedLength = tour.constructedLength();
+            event.length = tour.length();
+            event.commit();
+        }
+    }
+}
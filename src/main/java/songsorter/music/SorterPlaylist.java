@@ -2,6 +2,14 @@ package songsorter.music;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.apache.hc.core5.http.ParseException;
 import org.jfree.chart.ChartFactory;
@@ -12,24 +20,53 @@ import org.jfree.data.xy.XYSeriesCollection;
 
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.model_objects.specification.Paging;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.model_objects.specification.Track;
+import songsorter.jfr.SortEvent;
+import songsorter.metrics.Metrics;
 import songsorter.python.PythonEnvHandler;
 import songsorter.python.PythonError;
 import songsorter.queue.ArrayQueue;
+import songsorter.tour.MultiStartSolver;
+import songsorter.tour.TourPlanner;
+import songsorter.tour.TourResult;
 
 /**
  * A playlist object only for the SongSorter application, separate from {@code se.michaelthelin.spotify.model_objects.specification.Playlist}. 
  * Creates an object for public Spotify playlists. 
- * Enables nearest neighbour heuristic solution to TSP. 
+ * Enables nearest neighbour heuristic solution to TSP, improved with 2-opt and Or-opt. 
  */
 public class SorterPlaylist {
     private SpotifySong[] songs; 
     private String name; 
+    private TourPlanner tourPlanner = TourPlanner.defaultPlanner(); 
+    private TourResult lastTour; 
+    private MultiStartSolver.Result lastMultiStart; 
+    private volatile EmotionIndex<SpotifySong> index; 
+
+    /** Number of songs per model invocation, set with {@code -Dsongsorter.batch=N} */
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("songsorter.batch", 8); 
+
+    /** Number of tracks downloaded at once while loading a playlist, set with {@code -Dsongsorter.downloads=N} */
+    public static final int MAX_CONCURRENT_DOWNLOADS = Integer.getInteger("songsorter.downloads", 16); 
+
+    /** Number of start songs tried by {@code sort()}, set with {@code -Dsongsorter.sort.starts=N} */
+    public static final int SORT_STARTS = Integer.getInteger("songsorter.sort.starts", 1); 
+
+    /** Seed for choosing start songs in {@code sort()}, set with {@code -Dsongsorter.sort.seed=N}, random if unset */
+    public static final Long SORT_SEED = Long.getLong("songsorter.sort.seed"); 
+
+    /** Number of playlist items requested per page, the maximum allowed by the web API */
+    public static final int PAGE_SIZE = 100; 
 
     /**
      * Constructs a {@code SorterPlaylist} from a url to a spotify song.
+     * <p>Every page of the playlist is fetched, use {@code stream()} for very large playlists. 
+     * Each track's album art and preview clip are fetched on a virtual thread, at most 
+     * {@code MAX_CONCURRENT_DOWNLOADS} at a time, and the playlist keeps its original order. 
+     * Tracks without a preview are excluded.</p>
      * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
      * @param url Spotify url to playlist
      * @throws ParseException If underlying service fails
@@ -39,22 +76,151 @@ public class SorterPlaylist {
      */
     public SorterPlaylist(SpotifyApi sapi, String url) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException {
         String id = getPlaylistID(url); 
-        Playlist p = sapi.getPlaylist(id).build().execute(); 
-        PlaylistTrack[] trackList = p.getTracks().getItems();
-        songs = new SpotifySong[trackList.length]; 
+        Playlist p = SpotifyCalls.execute("getPlaylist", id, 0, () -> sapi.getPlaylist(id).build().execute()); 
+        List<PlaylistTrack> trackList = new ArrayList<PlaylistTrack>(); 
+        fetchPages(sapi, id, p.getTracks(), (page, offset) -> trackList.addAll(Arrays.asList(page)));
 
         name = p.getName(); 
-        
-        int i = 0;
-        for (PlaylistTrack t: trackList) {
+        songs = ingest(trackList.toArray(new PlaylistTrack[0])); 
+    }
+
+    /**
+     * Handler for pages of a playlist that is streamed with {@code SorterPlaylist.stream()}
+     */
+    public interface PageHandler {
+        /**
+         * Called once before the first page
+         * @param name the playlist name
+         * @param total the number of items in the playlist, including ones that may be excluded
+         */
+        default void onStart(String name, int total) {}
+
+        /**
+         * Called for every page as soon as its songs are loaded, in playlist order
+         * @param page the songs of the page, without tracks that have no preview
+         * @param offset index of the first item of the page in the playlist
+         */
+        void onPage(SpotifySong[] page, int offset); 
+    }
+
+    /**
+     * Handler for raw pages of playlist items
+     */
+    @FunctionalInterface
+    interface TrackPageHandler {
+        /**
+         * Called for every page as soon as it is fetched
+         * @param page the items of the page
+         * @param offset index of the first item of the page in the playlist
+         * @throws IOException If downstream processing of the page fails
+         * @throws URISyntaxException If a URL in the page is malformed
+         * @throws SpotifyWebApiException If downstream api requests fail
+         */
+        void accept(PlaylistTrack[] page, int offset) throws IOException, URISyntaxException, SpotifyWebApiException; 
+    }
+
+    /**
+     * Streams a playlist of any size page by page without building a {@code SorterPlaylist}. Every page of up to 
+     * {@code PAGE_SIZE} items is loaded and handed to {@code handler} before the next page is fetched, so early 
+     * tracks are available right away and only one page is held in memory at a time. 
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
+     * @param url Spotify url to playlist
+     * @param handler receives the playlist name and then each page of songs
+     * @throws ParseException If underlying service fails
+     * @throws SpotifyWebApiException If an http error occurs int eh api request
+     * @throws IOException If api output fails to be read
+     * @throws URISyntaxException If URL is malformed
+     */
+    public static void stream(SpotifyApi sapi, String url, PageHandler handler) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException {
+        String id = getPlaylistID(url); 
+        Playlist p = SpotifyCalls.execute("getPlaylist", id, 0, () -> sapi.getPlaylist(id).build().execute()); 
+        handler.onStart(p.getName(), p.getTracks().getTotal());
+        fetchPages(sapi, id, p.getTracks(), (page, offset) -> handler.onPage(ingest(page), offset));
+    }
+
+    /**
+     * Walks every page of a playlist's items, starting from the page embedded in the playlist object
+     * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
+     * @param id base64 playlist ID
+     * @param first the first page, from {@code Playlist.getTracks()}
+     * @param handler receives each page in order
+     * @throws ParseException If underlying service fails
+     * @throws SpotifyWebApiException If an http error occurs int eh api request
+     * @throws IOException If api output fails to be read
+     * @throws URISyntaxException If a URL is malformed
+     */
+    static void fetchPages(SpotifyApi sapi, String id, Paging<PlaylistTrack> first, TrackPageHandler handler) throws ParseException, SpotifyWebApiException, IOException, URISyntaxException {
+        Paging<PlaylistTrack> page = first; 
+        int offset = 0; 
+        while (true) {
+            PlaylistTrack[] items = page.getItems(); 
+            handler.accept(items, offset);
+            offset += items.length; 
+            if (page.getNext() == null || items.length == 0) {
+                return; 
+            }
+            int next = offset; 
+            page = SpotifyCalls.execute("getPlaylistsItems", id, next, () -> sapi.getPlaylistsItems(id).offset(next).limit(PAGE_SIZE).build().execute()); 
+        }
+    }
+
+    /**
+     * Constructs a {@code SorterPlaylist} from songs that were already loaded, such as by a {@code PlaylistPipeline}
+     * @param name playlist name
+     * @param songs the songs in playlist order
+     */
+    public SorterPlaylist(String name, SpotifySong[] songs) {
+        this.name = name; 
+        this.songs = songs; 
+    }
+
+    /**
+     * Creates a {@code SpotifySong} for each track concurrently on virtual threads 
+     * @param trackList the playlist items
+     * @return the songs in playlist order, without tracks that have no preview
+     * @throws SpotifyWebApiException If an http error occurs int eh api request
+     * @throws IOException If a download fails
+     * @throws URISyntaxException If a URL is malformed
+     */
+    static SpotifySong[] ingest(PlaylistTrack[] trackList) throws SpotifyWebApiException, IOException, URISyntaxException {
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_DOWNLOADS); 
+        List<Future<SpotifySong>> tasks = new ArrayList<Future<SpotifySong>>(); 
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PlaylistTrack t: trackList) {
+                if (t.getTrack() instanceof Track track) {
+                    tasks.add(executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return new SpotifySong(track); 
+                        } catch (NoPreviewException e) {
+                            System.out.println("A song does not have a preview and will be excluded from results");
+                            return null; 
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+            }
+        }
+
+        List<SpotifySong> ingested = new ArrayList<SpotifySong>(); 
+        for (Future<SpotifySong> f: tasks) {
             try {
-                songs[i] = new SpotifySong((Track) t.getTrack()); 
-            } catch (NoPreviewException e) {
-                System.out.println("A song does not have a preview and will be excluded from results");
-                i--; 
+                SpotifySong s = f.get(); 
+                if (s != null) ingested.add(s); 
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading the playlist", e); 
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause(); 
+                if (cause instanceof SpotifyWebApiException swe) throw swe; 
+                if (cause instanceof IOException ioe) throw ioe; 
+                if (cause instanceof URISyntaxException use) throw use; 
+                if (cause instanceof RuntimeException re) throw re; 
+                throw new IOException(cause); 
             }
-            i++; 
         }
+        return ingested.toArray(new SpotifySong[0]); 
     }
 
     /**
@@ -84,17 +250,65 @@ public class SorterPlaylist {
     }
 
     /**
-     * Computes the emotions of each song in the playlist (time consuming process)
+     * Computes the emotions of each song in the playlist (time consuming process) in batches of {@code DEFAULT_BATCH_SIZE}
      * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
      * @throws PythonError If Python throws an error
      * @throws IOException If reading/writing to CLI fails
      * @throws InterruptedException If underlying Python script fails mid-execution
      */
     public void setEmotions(PythonEnvHandler penv) throws PythonError, IOException, InterruptedException {
+        setEmotions(penv, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Computes the emotions of each song in the playlist (time consuming process). 
+     * Songs without emotions are grouped into batches that each run as one model invocation, and the 
+     * batches are submitted to the worker pool of {@code penv} and analyzed concurrently. 
+     * @param penv The {@code PythonEnvHandler} to pass each song to machine learning model
+     * @param batchSize maximum number of songs per model invocation
+     * @throws PythonError If Python throws an error, or fails on any song
+     * @throws IOException If reading/writing to CLI fails
+     * @throws InterruptedException If underlying Python script fails mid-execution
+     */
+    public void setEmotions(PythonEnvHandler penv, int batchSize) throws PythonError, IOException, InterruptedException {
+        List<SpotifySong> pending = new ArrayList<SpotifySong>(); 
         for (SpotifySong s: songs) {
-            if (s!=null)
-                s.setEmotions(penv);
+            if (s!=null && s.getEmotionSeries()==null)
+                pending.add(s); 
+        }
+
+        List<Future<Integer>> tasks = new ArrayList<Future<Integer>>(); 
+        for (int start = 0; start<pending.size(); start+=batchSize) {
+            List<SpotifySong> batch = pending.subList(start, Math.min(start+batchSize, pending.size())); 
+            tasks.add(penv.submit(() -> {
+                List<String> paths = new ArrayList<String>(); 
+                for (SpotifySong s: batch) {
+                    paths.add(s.getFilePath()); 
+                }
+                EmotionSeries[] results = penv.computeEmotions(paths); 
+                int failed = 0; 
+                for (int i = 0; i<results.length; i++) {
+                    if (results[i] == null) {
+                        failed++; 
+                    } else {
+                        batch.get(i).setEmotions(results[i]); 
+                    }
+                }
+                return failed; 
+            }));
         }
+        PythonEnvHandler.awaitAll(tasks);
+        index = null; 
+
+        int failed = 0; 
+        for (Future<Integer> f: tasks) {
+            try {
+                failed += f.get(); 
+            } catch (ExecutionException e) {
+                // Already rethrown by awaitAll
+            }
+        }
+        if (failed > 0) throw new PythonError(failed + " songs could not be analyzed"); 
     }
 
     /**
@@ -105,7 +319,7 @@ public class SorterPlaylist {
         double[] arousals = new double[songs.length]; 
         for(int i=0; i<songs.length; i++) {
             if (songs[i] != null) {
-                arousals[i] = songs[i].getAverageArousal(); 
+                arousals[i] = songs[i].getSummary().arousal().mean(); 
             }
         }
         return arousals; 
@@ -119,14 +333,28 @@ public class SorterPlaylist {
         double[] valences = new double[songs.length]; 
         for(int i=0; i<songs.length; i++) {
             if (songs[i] != null) {
-                valences[i] = songs[i].getAverageValence(); 
+                valences[i] = songs[i].getSummary().valence().mean(); 
             }
         }
         return valences; 
     }
 
     /**
-     * Gets the playlist as an array-bases Queue
+     * Gets an index of the analyzed songs for k-nearest, radius and rectangle queries by mood, built on first use
+     * and rebuilt after {@code setEmotions()}
+     * @return the {@code EmotionIndex} of every song whose emotions are computed
+     */
+    public EmotionIndex<SpotifySong> index() {
+        EmotionIndex<SpotifySong> i = index; 
+        if (i == null) {
+            i = EmotionIndex.of(songs); 
+            index = i; 
+        }
+        return i; 
+    }
+
+    /**
+     * Gets the playlist as an array-bases Queue, a copy that can be changed without changing the playlist
      * @return an {@code ArrayQueue<SpotifySong>} in the same order as the palylist
      */
     public ArrayQueue<SpotifySong> asQueue() {
@@ -195,35 +423,74 @@ public class SorterPlaylist {
     	return s.indexOf("open.spotify.com/playlist/") > 0; 
     }
 
+    /**
+     * Sets how {@code sort()} builds the playlist order
+     * @param planner the solver and improver to use, see {@code TourPlanner.defaultPlanner()}
+     */
+    public void setTourPlanner(TourPlanner planner) {
+        tourPlanner = planner; 
+    }
+
+    /**
+     * Gets the result of the last {@code sort()}, with the tour length and time taken
+     * @return the last tour, or {@code null} if the playlist has not been sorted
+     */
+    public TourResult lastTour() {
+        return lastTour; 
+    }
+
+    /**
+     * Gets the result of the last {@code sort(int, long)}, with the tour length from every start
+     * @return the last multi-start result, or {@code null} if the playlist has not been sorted that way
+     */
+    public MultiStartSolver.Result lastMultiStart() {
+        return lastMultiStart; 
+    }
+
     /**
      * Uses a nearest neighbour approach to "sort" the playlist and "solve" the travelling salesman problem via heuristic
+     * <p>The tour starts at a random song and is built by the {@code TourPlanner} of the playlist, by default a 
+     * k-d tree nearest neighbour search followed by 2-opt and Or-opt improvement over (arousal, valence). 
+     * Songs that are missing are moved to the end. If {@code -Dsongsorter.sort.starts} or {@code -Dsongsorter.sort.seed} 
+     * is set, {@code sort(int, long)} is used instead.</p>
      * <p>Does NOT chance the Spotify playlist via API</p>
      */
     public void sort() {
-        SpotifySong[] newArr = new SpotifySong[songs.length]; 
-        
-        int randIdx; 
-        do {
-            randIdx = (int) (Math.random()*songs.length); 
-        } while (songs[randIdx] == null); 
-        newArr[0] = songs[randIdx]; 
-        songs[randIdx] = songs[0]; 
-        songs[0] = null; 
-
-        for(int i=1; i<songs.length; i++) {
-            SpotifySong closest = songs[i]; 
-            int idx = i; 
-            for (int j = i+1; j<songs.length; j++) {
-                if (songs[j] != null && newArr[i-1].distance(closest) > newArr[i-1].distance(songs[j])) {
-                    closest = songs[j]; 
-                    idx = j; 
-                }
-            }
-            newArr[i] = closest; 
-            songs[idx] = songs[i];
-            songs[i]=null;  
+        if (SORT_STARTS > 1 || SORT_SEED != null) {
+            sort(SORT_STARTS, SORT_SEED != null ? SORT_SEED : System.nanoTime()); 
+            return; 
         }
 
-        songs = newArr; 
+        int[] present = SongOrder.present(songs); 
+        if (present.length == 0) return; 
+        double[][] coords = SongOrder.coordinates(songs, present); 
+
+        SortEvent event = new SortEvent(); 
+        event.begin();
+        lastTour = tourPlanner.plan(coords[0], coords[1], (int) (Math.random()*present.length)); 
+        SongOrder.commit(event, name, present.length, 1, lastTour);
+        Metrics.shared().histogram("sort").record(lastTour.totalNanos());
+        songs = SongOrder.reorder(songs, present, lastTour.order());
+    }
+
+    /**
+     * Sorts the playlist like {@code sort()}, but builds the tour from several start songs in parallel on the common 
+     * {@code ForkJoinPool} and keeps the shortest. The same seed always gives the same order. 
+     * <p>Does NOT chance the Spotify playlist via API</p>
+     * @param starts number of start songs to try, every song is tried if this is at least the playlist length
+     * @param seed seed for choosing the start songs
+     */
+    public void sort(int starts, long seed) {
+        int[] present = SongOrder.present(songs); 
+        if (present.length == 0) return; 
+        double[][] coords = SongOrder.coordinates(songs, present); 
+
+        SortEvent event = new SortEvent(); 
+        event.begin();
+        lastMultiStart = new MultiStartSolver(tourPlanner).solve(coords[0], coords[1], starts, seed); 
+        lastTour = lastMultiStart.best(); 
+        SongOrder.commit(event, name, present.length, Math.min(starts, present.length), lastTour);
+        Metrics.shared().histogram("sort").record(lastMultiStart.nanos());
+        songs = SongOrder.reorder(songs, present, lastTour.order());
     }
 }
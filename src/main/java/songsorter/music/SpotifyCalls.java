@@ -0,0 +1,64 @@
+package songsorter.music;
+
+import java.io.IOException;
+
+import org.apache.hc.core5.http.ParseException;
+
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import songsorter.jfr.SpotifyApiEvent;
+import songsorter.metrics.Metrics;
+
+/**
+ * Runs Spotify Web API requests with a {@code spotify.fetch} latency sample and a {@code SpotifyApiEvent} for
+ * Flight Recorder, so every call is measured the same way
+ */
+final class SpotifyCalls {
+
+    /**
+     * A Spotify request, typically {@code () -> sapi.getTrack(id).build().execute()}
+     * @param <T> the response type
+     */
+    @FunctionalInterface
+    interface Call<T> {
+        T execute() throws IOException, SpotifyWebApiException, ParseException;
+    }
+
+    private SpotifyCalls() {}
+
+    /**
+     * Runs a request
+     * @param <T> the response type
+     * @param endpoint name of the request, such as {@code getTrack}
+     * @param id the track or playlist ID
+     * @param offset offset of the page, 0 for requests that are not paged
+     * @param call the request
+     * @return the response
+     * @throws IOException If the request fails to be sent or read
+     * @throws SpotifyWebApiException If Spotify answers with an error
+     * @throws ParseException If the response cannot be parsed
+     */
+    static <T> T execute(String endpoint, String id, int offset, Call<T> call) throws IOException, SpotifyWebApiException, ParseException {
+        SpotifyApiEvent event = new SpotifyApiEvent();
+        event.begin();
+        long t0 = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = call.execute();
+            succeeded = true;
+            return result;
+        } finally {
+            Metrics.shared().histogram("spotify.fetch").recordSince(t0);
+            if (!succeeded) {
+                Metrics.shared().counter("spotify.errors").increment();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.endpoint = endpoint;
+                event.id = id;
+                event.offset = offset;
+                event.succeeded = succeeded;
+                event.commit();
+            }
+        }
+    }
+}
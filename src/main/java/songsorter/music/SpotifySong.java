@@ -1,22 +1,14 @@
 package songsorter.music;
 
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import javax.imageio.ImageIO;
-
 import org.apache.hc.core5.http.ParseException;
 
 import se.michaelthelin.spotify.SpotifyApi;
@@ -24,6 +16,7 @@ import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
 import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.PlaylistTrack;
 import se.michaelthelin.spotify.model_objects.specification.Track;
+import songsorter.jfr.ClipDownloadEvent;
 import songsorter.python.PythonEnvHandler;
 import songsorter.python.PythonError;
 
@@ -33,11 +26,14 @@ import songsorter.python.PythonError;
 public class SpotifySong extends Song{
     private String url, previewURL, album, id, artists; 
     private Track spotTrack; 
-    private BufferedImage art; 
+    private String artUrl; 
 
     /** Directory path of the song cache */
     public static final String OUTPUT_PATH = System.getProperty("user.home") + "/Library/Caches/" + "io.github.etashj.songsorter/"; 
 
+    // Read from the property rather than GraphicsEnvironment so batch runs never load AWT
+    private static final boolean HEADLESS = Boolean.getBoolean("java.awt.headless"); 
+
     /**
      * Constructor that creates an object, caches the clip, and computes the emotions of the clip
      * @param sapi the {@code se.michaelthelin.spotify.SpotifyApi} object with credentials that enable web API requests
@@ -54,7 +50,7 @@ public class SpotifySong extends Song{
     public SpotifySong(SpotifyApi sapi, String spotifyURL, PythonEnvHandler penv) throws MalformedURLException, IOException, URISyntaxException, SpotifyWebApiException, PythonError, ParseException, InterruptedException {
         url = spotifyURL; 
         id = getSongID(spotifyURL); 
-        spotTrack = sapi.getTrack(id).build().execute();
+        spotTrack = SpotifyCalls.execute("getTrack", id, 0, () -> sapi.getTrack(id).build().execute());
         previewURL = spotTrack.getPreviewUrl(); 
         album = spotTrack.getAlbum().getName(); 
         id = spotTrack.getId(); 
@@ -68,7 +64,8 @@ public class SpotifySong extends Song{
 
         setTitle(spotTrack.getName());
         
-        art = ImageIO.read(new URI(spotTrack.getAlbum().getImages()[0].getUrl()).toURL());
+        artUrl = AlbumArtCache.chooseUrl(spotTrack.getAlbum().getImages()); 
+        warmArt();
         
         cacheSongClip();
 
@@ -88,7 +85,7 @@ public class SpotifySong extends Song{
     public SpotifySong(SpotifyApi sapi, String spotifyURL) throws MalformedURLException, IOException, URISyntaxException, SpotifyWebApiException, ParseException {
         url = spotifyURL; 
         id = getSongID(spotifyURL); 
-        spotTrack = sapi.getTrack(id).build().execute();
+        spotTrack = SpotifyCalls.execute("getTrack", id, 0, () -> sapi.getTrack(id).build().execute());
         previewURL = spotTrack.getPreviewUrl(); 
         album = spotTrack.getAlbum().getName(); 
         id = spotTrack.getId(); 
@@ -102,7 +99,8 @@ public class SpotifySong extends Song{
 
         setTitle(spotTrack.getName());
         
-        art = ImageIO.read(new URI(spotTrack.getAlbum().getImages()[0].getUrl()).toURL());
+        artUrl = AlbumArtCache.chooseUrl(spotTrack.getAlbum().getImages()); 
+        warmArt();
         
         cacheSongClip(); 
     }
@@ -151,7 +149,8 @@ public class SpotifySong extends Song{
         spotTrack = track; 
         setTitle(track.getName());
         
-        art = ImageIO.read(new URI(spotTrack.getAlbum().getImages()[0].getUrl()).toURL());
+        artUrl = AlbumArtCache.chooseUrl(spotTrack.getAlbum().getImages()); 
+        warmArt();
 
         cacheSongClip();
 
@@ -183,11 +182,35 @@ public class SpotifySong extends Song{
         
         setTitle(track.getName());
         
-        art = ImageIO.read(new URI(spotTrack.getAlbum().getImages()[0].getUrl()).toURL());
+        artUrl = AlbumArtCache.chooseUrl(spotTrack.getAlbum().getImages()); 
+        warmArt();
         
         cacheSongClip();
     }
 
+    /**
+     * Constructor for a song that is not backed by Spotify, with no clip, art or emotions. Used by benchmarks 
+     * and other code that needs many songs without network access. 
+     * @param id the base64 ID to report
+     * @param title the song title
+     */
+    SpotifySong(String id, String title) {
+        super(); 
+        this.id = id; 
+        this.artists = ""; 
+        setTitle(title);
+    }
+
+    /**
+     * Stores the album art thumbnail now so panels never wait on the network, the image itself is loaded on demand. 
+     * Skipped when running headless with {@code -Djava.awt.headless=true}, where nothing is drawn. 
+     */
+    private void warmArt() throws IOException {
+        if (!HEADLESS) {
+            AlbumArtCache.shared().get(artUrl);
+        }
+    }
+
     /**
      * Gets the ID of a song fromn the song's URL
      * @param url String song URL
@@ -206,7 +229,7 @@ public class SpotifySong extends Song{
     }
 
     /**
-     * Caches a song clip to the cache directory
+     * Caches a song clip to the cache directory through the shared {@code ClipDownloader}, reusing a complete cached copy
      * @return the filepath of the cached song
      * @throws SpotifyWebApiException If spotify API fails
      * @throws IOException If file download fails
@@ -218,30 +241,25 @@ public class SpotifySong extends Song{
         }
 
         String fullOutFP = OUTPUT_PATH + id + ".mp3"; 
-        
-        Path outputPath = Paths.get(fullOutFP);
-        super.setFilePath(fullOutFP);
-        if (!Files.exists(outputPath)) {
-            URLConnection conn = new URI(previewURL).toURL().openConnection();
-            InputStream is = conn.getInputStream();
-            OutputStream outstream; 
-
-            try {
-                outstream = new FileOutputStream(new File(fullOutFP));
-            } catch(FileNotFoundException e) {
-                new File(OUTPUT_PATH).mkdirs();
-                outstream = new FileOutputStream(new File(fullOutFP));
+        Path target = Paths.get(fullOutFP); 
+        ClipDownloadEvent event = new ClipDownloadEvent(); 
+        // Only checked while recording, so there is no extra disk access otherwise
+        event.cached = event.isEnabled() && ClipDownloader.isCached(target); 
+        event.begin();
+        try {
+            ClipDownloader.shared().download(new URI(previewURL), target); 
+            event.succeeded = true; 
+        } finally {
+            // Failed downloads are recorded too, with no size
+            event.end();
+            if (event.shouldCommit()) {
+                event.trackId = id; 
+                event.url = previewURL; 
+                event.bytes = event.succeeded ? Files.size(target) : 0; 
+                event.commit();
             }
-
-            byte[] buffer = new byte[4096];
-            int len;
-            while ((len = is.read(buffer)) > 0) {
-                outstream.write(buffer, 0, len);
-            }
-            outstream.close();
-
-            setFilePath(fullOutFP); 
         }
+        super.setFilePath(fullOutFP);
 
         return fullOutFP; 
     }
@@ -295,11 +313,20 @@ public class SpotifySong extends Song{
     }
     
     /**
-     * Gets song's album art
-     * @return {@code BufferedImage} of the song's album art
+     * Gets song's album art from the shared {@code AlbumArtCache}, tracks of the same album share one image
+     * @return {@code BufferedImage} of the song's album art, scaled to {@code AlbumArtCache.SIZE}, or {@code null} if the album has no art
+     * @throws IOException If the art has to be downloaded again and the download fails
+     */
+    public BufferedImage getArt() throws IOException {
+    	return AlbumArtCache.shared().get(artUrl); 
+    }
+
+    /**
+     * Gets the URL of the album art image used for this song
+     * @return the image URL, or {@code null} if the album has no art
      */
-    public BufferedImage getArt() {
-    	return this.art; 
+    public String getArtUrl() {
+    	return this.artUrl; 
     }
     
     /**
@@ -340,8 +367,6 @@ public class SpotifySong extends Song{
      * @return the distance between two points. 
      */
     public double distance(SpotifySong s) {
-        double x = Math.abs(getAverageArousal() - s.getAverageArousal());
-        double y = Math.abs(getAverageValence() - s.getAverageValence());
-        return Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2));
+        return getSummary().distance(s.getSummary());
     }
 }
@@ -0,0 +1,373 @@
+package songsorter.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import songsorter.metrics.Counter;
+import songsorter.metrics.Histogram;
+import songsorter.metrics.Metrics;
+import songsorter.queue.BoundedBlockingQueue;
+
+/**
+ * A set of overlapping stages connected by {@code BoundedBlockingQueue}s. Each stage runs on its own number of
+ * threads and blocks when its output queue is full, so the slowest stage sets the throughput of the whole
+ * pipeline instead of every stage waiting for the previous one to finish.
+ * <p>Stages are added in order with {@code source()}, {@code stage()} and {@code sink()}, each taking the queue
+ * returned by the previous call, and start running as soon as they are added. A stage closes its output queue when
+ * all of its threads are done, which lets the next stage drain and finish.</p>
+ * <p>Once cancelled a pipeline stays cancelled, stages added afterwards get cancelled queues and never start.</p>
+ * <p>The {@code pipeline.<stage>.queue} gauge is the number of items waiting for stages of that name across every
+ * running pipeline, a queue stops counting once its stage has finished.</p>
+ */
+public class Pipeline {
+
+    /**
+     * Passes results from a stage to the next queue
+     * @param <O> the output type
+     */
+    @FunctionalInterface
+    public interface Emitter<O> {
+        /**
+         * Sends a result downstream, waiting while the next queue is full
+         * @param item the result
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void emit(O item) throws InterruptedException;
+    }
+
+    /**
+     * Produces the items of the first stage
+     * @param <O> the output type
+     */
+    @FunctionalInterface
+    public interface Source<O> {
+        /**
+         * Emits every item, then returns
+         * @param out where to send the items
+         * @throws Exception if producing fails, the later stages still finish the items that were emitted and the
+         * failure is kept for {@code getSourceFailure()} instead of being reported as a failed item
+         */
+        void run(Emitter<O> out) throws Exception;
+    }
+
+    /**
+     * Work done by a stage for each item, which may emit any number of results
+     * @param <I> the input type
+     * @param <O> the output type
+     */
+    @FunctionalInterface
+    public interface StageFunction<I, O> {
+        /**
+         * Processes one item
+         * @param item the input
+         * @param out where to send the results
+         * @throws Exception if this item fails, it is recorded and the stage moves on to the next item
+         */
+        void apply(I item, Emitter<O> out) throws Exception;
+    }
+
+    /**
+     * Work done by the last stage for each item
+     * @param <I> the input type
+     */
+    @FunctionalInterface
+    public interface SinkFunction<I> {
+        /**
+         * Consumes one item
+         * @param item the input
+         * @throws Exception if this item fails, it is recorded and the stage moves on to the next item
+         */
+        void accept(I item) throws Exception;
+    }
+
+    /**
+     * Takes the next unit of work for a stage
+     * @param <T> the type of the unit
+     */
+    @FunctionalInterface
+    private interface Take<T> {
+        T take() throws InterruptedException;
+    }
+
+    /**
+     * Receives failures of individual items
+     */
+    @FunctionalInterface
+    public interface ErrorHandler {
+        /**
+         * Called from the failing stage's thread
+         * @param stage name of the stage
+         * @param item the item that failed
+         * @param e the failure
+         */
+        void onError(String stage, Object item, Exception e);
+    }
+
+    // Input queues of running stages by gauge name, shared by every pipeline
+    private static final ConcurrentHashMap<String, Set<BoundedBlockingQueue<?>>> LIVE_QUEUES = new ConcurrentHashMap<String, Set<BoundedBlockingQueue<?>>>();
+
+    // Private data
+    private final int capacity;
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private final List<BoundedBlockingQueue<?>> queues = new ArrayList<BoundedBlockingQueue<?>>();
+    private final ConcurrentLinkedQueue<Exception> errors = new ConcurrentLinkedQueue<Exception>();
+    private volatile Exception sourceFailure;
+    private boolean cancelled;
+    private ErrorHandler errorHandler = (stage, item, e) -> {
+        System.out.println("Pipeline stage " + stage + " failed: " + e);
+    };
+
+    /**
+     * Creates an empty pipeline
+     * @param capacity the capacity of each queue between stages
+     */
+    public Pipeline(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Replaces the default handler, which prints each failure
+     * @param handler receives failures of individual items
+     * @return this pipeline
+     */
+    public Pipeline onError(ErrorHandler handler) {
+        errorHandler = handler;
+        return this;
+    }
+
+    /**
+     * Adds and starts the first stage on a single thread
+     * @param <O> the output type
+     * @param name stage name, used for threads and errors
+     * @param source produces the items
+     * @return the output queue of the stage
+     */
+    public <O> BoundedBlockingQueue<O> source(String name, Source<O> source) {
+        BoundedBlockingQueue<O> out = newQueue();
+        start(name, 1, out, () -> {}, () -> {
+            try {
+                source.run(out::put);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Not an item failure, the items that were never produced would be missing without any error
+                sourceFailure = e;
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Adds and starts a middle stage
+     * @param <I> the input type
+     * @param <O> the output type
+     * @param name stage name, used for threads and errors
+     * @param parallelism number of threads working on the stage
+     * @param in the output queue of the previous stage
+     * @param f the work done for each item
+     * @return the output queue of the stage
+     */
+    public <I, O> BoundedBlockingQueue<O> stage(String name, int parallelism, BoundedBlockingQueue<I> in, StageFunction<I, O> f) {
+        return stage(name, parallelism, in, in::take, f);
+    }
+
+    private <T, O> BoundedBlockingQueue<O> stage(String name, int parallelism, BoundedBlockingQueue<?> in, Take<T> take, StageFunction<T, O> f) {
+        BoundedBlockingQueue<O> out = newQueue();
+        Runnable untrack = track("pipeline." + name + ".queue", in);
+        Histogram latency = Metrics.shared().histogram("pipeline." + name);
+        Counter failures = Metrics.shared().counter("pipeline." + name + ".errors");
+        start(name, parallelism, out, untrack, () -> {
+            try {
+                T item;
+                while ((item = take.take()) != null) {
+                    // Includes time blocked on a full output queue, which shows up as a slow stage after this one
+                    long t0 = System.nanoTime();
+                    try {
+                        f.apply(item, out::put);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        failures.increment();
+                        fail(name, item, e);
+                    }
+                    latency.recordSince(t0);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Adds and starts a middle stage that works on batches. Each thread waits for one item, then takes whatever else is
+     * already queued up to {@code batchSize}, so batches fill up while the stage is busy but a lone item never waits
+     * for company.
+     * @param <I> the input type
+     * @param <O> the output type
+     * @param name stage name, used for threads and errors
+     * @param parallelism number of threads working on the stage
+     * @param in the output queue of the previous stage
+     * @param batchSize the most items in one batch
+     * @param f the work done for each batch, in queue order
+     * @return the output queue of the stage
+     */
+    public <I, O> BoundedBlockingQueue<O> batchStage(String name, int parallelism, BoundedBlockingQueue<I> in, int batchSize, StageFunction<List<I>, O> f) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        return stage(name, parallelism, in, () -> {
+            I first = in.take();
+            if (first == null) {
+                return null;
+            }
+            List<I> batch = new ArrayList<I>(batchSize);
+            batch.add(first);
+            in.drainTo(batch, batchSize - 1);
+            return batch;
+        }, f);
+    }
+
+    /**
+     * Adds and starts the last stage
+     * @param <I> the input type
+     * @param name stage name, used for threads and errors
+     * @param parallelism number of threads working on the stage
+     * @param in the output queue of the previous stage
+     * @param f the work done for each item
+     */
+    public <I> void sink(String name, int parallelism, BoundedBlockingQueue<I> in, SinkFunction<I> f) {
+        stage(name, parallelism, in, (I item, Emitter<Object> out) -> f.accept(item));
+    }
+
+    /**
+     * Waits for every stage to finish
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        List<Thread> started;
+        synchronized (threads) {
+            started = new ArrayList<Thread>(threads);
+        }
+        for (Thread t: started) {
+            t.join();
+        }
+    }
+
+    /**
+     * Discards all queued items and stops every stage, including stages added later
+     */
+    public void cancel() {
+        synchronized (threads) {
+            cancelled = true;
+            for (BoundedBlockingQueue<?> q: queues) {
+                q.cancel();
+            }
+            for (Thread t: threads) {
+                t.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if the pipeline has been cancelled
+     * @return if {@code cancel()} was called
+     */
+    public boolean isCancelled() {
+        synchronized (threads) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Gets the failures of individual items so far
+     * @return the recorded exceptions
+     */
+    public List<Exception> getErrors() {
+        return new ArrayList<Exception>(errors);
+    }
+
+    /**
+     * Gets the exception the source stopped with, which callers should check after {@code await()} since the
+     * stages finish normally with the items emitted before it
+     * @return the failure, or {@code null} if the source emitted everything
+     */
+    public Exception getSourceFailure() {
+        return sourceFailure;
+    }
+
+    /**
+     * Gets the queues between stages in order, for monitoring their depth
+     * @return the queues
+     */
+    public List<BoundedBlockingQueue<?>> getQueues() {
+        synchronized (threads) {
+            return new ArrayList<BoundedBlockingQueue<?>>(queues);
+        }
+    }
+
+    private <O> BoundedBlockingQueue<O> newQueue() {
+        BoundedBlockingQueue<O> q = new BoundedBlockingQueue<O>(capacity);
+        synchronized (threads) {
+            queues.add(q);
+            if (cancelled) {
+                q.cancel();
+            }
+        }
+        return q;
+    }
+
+    private void fail(String stage, Object item, Exception e) {
+        errors.add(e);
+        errorHandler.onError(stage, item, e);
+    }
+
+    /**
+     * Counts a queue in the gauge of its stage name, registering the gauge on first use
+     * @return removes the queue from the gauge
+     */
+    private static Runnable track(String gauge, BoundedBlockingQueue<?> q) {
+        Set<BoundedBlockingQueue<?>> live = LIVE_QUEUES.computeIfAbsent(gauge, g -> {
+            Set<BoundedBlockingQueue<?>> queues = ConcurrentHashMap.newKeySet();
+            Metrics.shared().gauge(g, () -> {
+                long n = 0;
+                for (BoundedBlockingQueue<?> each: queues) n += each.size();
+                return n;
+            });
+            return queues;
+        });
+        live.add(q);
+        return () -> live.remove(q);
+    }
+
+    /**
+     * Starts the threads of a stage
+     * @param finished run once every thread is done, after {@code out} is closed
+     */
+    private void start(String name, int parallelism, BoundedBlockingQueue<?> out, Runnable finished, Runnable work) {
+        AtomicInteger running = new AtomicInteger(parallelism);
+        synchronized (threads) {
+            if (cancelled) {
+                out.close();
+                finished.run();
+                return;
+            }
+            for (int i = 0; i < parallelism; i++) {
+                threads.add(Thread.ofPlatform().daemon().name(name + "-" + i).start(() -> {
+                    try {
+                        work.run();
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            out.close();
+                            finished.run();
+                        }
+                    }
+                }));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package songsorter.python;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import songsorter.music.EmotionSeries;
+
+/**
+ * Disk-backed store of model results so clips are never analyzed twice, even across restarts.
+ * <p>Results are keyed by a SHA-256 of the clip's content, so the same audio under a different track ID or path
+ * is reused, and stored in a directory named after a fingerprint of the bundled model files. When the model
+ * changes the old directory is deleted and every clip is analyzed again.</p>
+ */
+public class EmotionCache {
+    /** Resources whose content determines the model output */
+    public static final String[] MODEL_RESOURCES = {
+        "models/model_state_dict.pth", "models/predictor_state_dict.pth", "demo.py", "models.py"
+    };
+
+    private static final int MAGIC = 0x534f4e47;
+
+    private final Path dir;
+    private final String modelFingerprint;
+    private final ConcurrentHashMap<String, String> contentHashes = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Opens the cache for the currently bundled model in {@code OUTPUT_PATH/emotions}, removing results of other models
+     * @throws IOException If the model resources cannot be read or the directory cannot be created
+     */
+    public EmotionCache() throws IOException {
+        this(Paths.get(PythonEnvHandler.OUTPUT_PATH, "emotions"), modelFingerprint(EmotionCache.class.getClassLoader()));
+    }
+
+    /**
+     * Opens the cache for a model in a directory, removing results of other models
+     * @param root the directory holding one subdirectory per model fingerprint
+     * @param modelFingerprint fingerprint of the model, see {@code modelFingerprint()}
+     * @throws IOException If the directory cannot be created
+     */
+    public EmotionCache(Path root, String modelFingerprint) throws IOException {
+        this.modelFingerprint = modelFingerprint;
+        this.dir = root.resolve(modelFingerprint.substring(0, 16));
+        Files.createDirectories(dir);
+
+        File[] stale = root.toFile().listFiles();
+        if (stale != null) {
+            for (File f: stale) {
+                if (!f.toPath().equals(dir)) {
+                    deleteRecursively(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes a fingerprint of the bundled model weights and scripts
+     * @param c the {@code ClassLoader} to load the resources with
+     * @return lowercase hex SHA-256 over the hashes of {@code MODEL_RESOURCES}
+     * @throws IOException If a resource is missing or cannot be read
+     */
+    public static String modelFingerprint(ClassLoader c) throws IOException {
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (String r: MODEL_RESOURCES) {
+            hashes.put(r, Fingerprint.ofResource(c, r));
+        }
+        return modelFingerprint(hashes);
+    }
+
+    /**
+     * Computes a fingerprint of the model from resource hashes that were already computed, such as
+     * {@code PythonEnvHandler.getResourceHashes()}
+     * @param resourceHashes map from resource name to its hash, containing every entry of {@code MODEL_RESOURCES}
+     * @return lowercase hex SHA-256 over the hashes of {@code MODEL_RESOURCES}
+     */
+    public static String modelFingerprint(Map<String, String> resourceHashes) {
+        StringBuilder sb = new StringBuilder();
+        for (String r: MODEL_RESOURCES) {
+            sb.append(r).append('=').append(resourceHashes.get(r)).append('\n');
+        }
+        return Fingerprint.of(sb.toString());
+    }
+
+    /**
+     * Gets the fingerprint of the model whose results this cache holds
+     * @return the model fingerprint
+     */
+    public String getModelFingerprint() {
+        return modelFingerprint;
+    }
+
+    /**
+     * Looks up the result for a clip
+     * @param fp Path to the mp3 file
+     * @return the cached {@code EmotionSeries}, or {@code null} if this audio has not been analyzed by this model
+     * @throws IOException If the clip cannot be read
+     */
+    public EmotionSeries get(String fp) throws IOException {
+        Path entry = dir.resolve(contentHash(fp) + ".bin");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int n = in.readInt();
+            double[] arousal = new double[n];
+            double[] valence = new double[n];
+            for (int i = 0; i<n; i++) {
+                arousal[i] = in.readDouble();
+                valence[i] = in.readDouble();
+            }
+            return EmotionSeries.of(arousal, valence);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Ignoring corrupt cache entry " + entry + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the result for a clip, the entry is written to a temporary file and renamed so readers never see a partial entry
+     * @param fp Path to the mp3 file
+     * @param points the model output for the clip
+     * @throws IOException If the clip cannot be read or the entry cannot be written
+     */
+    public void put(String fp, EmotionSeries points) throws IOException {
+        Path entry = dir.resolve(contentHash(fp) + ".bin");
+        Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(points.length());
+            for (int i = 0; i<points.length(); i++) {
+                out.writeDouble(points.arousal(i));
+                out.writeDouble(points.valence(i));
+            }
+        }
+        Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Hashes a clip's content, memoized by path, size and modification time so a clip is only read once per session
+     * @param fp Path to the mp3 file
+     * @return lowercase hex SHA-256 of the clip
+     * @throws IOException If the clip cannot be read
+     */
+    public String contentHash(String fp) throws IOException {
+        Path p = Paths.get(fp);
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        String key = fp + '|' + attrs.size() + '|' + attrs.lastModifiedTime().toMillis();
+        String hash = contentHashes.get(key);
+        if (hash == null) {
+            hash = Fingerprint.of(p);
+            contentHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c: children) {
+                deleteRecursively(c);
+            }
+        }
+        f.delete();
+    }
+}
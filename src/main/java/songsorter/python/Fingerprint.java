@@ -0,0 +1,86 @@
+package songsorter.python;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Static helpers to compute SHA-256 fingerprints of files and bundled resources
+ */
+public final class Fingerprint {
+
+    private Fingerprint() {}
+
+    /**
+     * Creates a new SHA-256 digest
+     * @return the digest
+     */
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a stream fully into a digest, the stream is not closed
+     * @param md the digest to update
+     * @param is the stream to read
+     * @throws IOException If reading fails
+     */
+    public static void update(MessageDigest md, InputStream is) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            md.update(buffer, 0, len);
+        }
+    }
+
+    /**
+     * Hashes the content of a file
+     * @param p path to the file
+     * @return lowercase hex SHA-256 of the file
+     * @throws IOException If the file cannot be read
+     */
+    public static String of(Path p) throws IOException {
+        MessageDigest md = digest();
+        try (InputStream is = Files.newInputStream(p)) {
+            update(md, is);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Hashes the content of a classpath resource
+     * @param c the {@code ClassLoader} to load the resource with
+     * @param name the resource name
+     * @return lowercase hex SHA-256 of the resource
+     * @throws IOException If the resource is missing or cannot be read
+     */
+    public static String ofResource(ClassLoader c, String name) throws IOException {
+        MessageDigest md = digest();
+        try (InputStream is = c.getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException("Missing resource " + name);
+            }
+            update(md, is);
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Hashes the content of a string
+     * @param s the string
+     * @return lowercase hex SHA-256 of the UTF-8 bytes of the string
+     */
+    public static String of(String s) {
+        return HexFormat.of().formatHex(digest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -4,13 +4,26 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
-
-import songsorter.music.EmotionPoint;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import songsorter.jfr.PythonProcessEvent;
+import songsorter.metrics.Metrics;
+import songsorter.music.EmotionSeries;
 
 import java.io.File;
 
@@ -25,6 +38,23 @@ public class PythonEnvHandler {
     private String python = OUTPUT_PATH + "venv/bin/python3"; 
     private String venv = OUTPUT_PATH + "venv";
 
+    private final boolean useWorker = !"false".equals(System.getProperty("songsorter.worker"));
+    private PythonWorkerPool pool;
+    private EmotionCache cache;
+    private boolean venvCreated; 
+    private long bootstrapMillis; 
+    private final Map<String, String> resourceHashes = new LinkedHashMap<String, String>(); 
+
+    /** Name of the manifest in the cache folder recording the hash of every copied resource and of the last pip install */
+    public static final String BOOTSTRAP_MANIFEST = "bootstrap.properties"; 
+
+    private static final String[] RESOURCES = {
+        "models/model_state_dict.pth", "models/predictor_state_dict.pth", "requirements.txt", "demo.py", "models.py"
+    }; 
+    private static final String[] RESOURCE_TARGETS = {
+        "models/model_state_dict.pth", "models/predictor_state_dict.pth", "requirements.txt", "scripts/demo.py", "scripts/models.py"
+    }; 
+
     /**
      * Creates a Python environment and installs all python dependencies via Pip. 
      * <p> Note: This process can be intensive and may take some time </p>
@@ -33,8 +63,11 @@ public class PythonEnvHandler {
      * @throws InterruptedException If underlying Python script fails mid-execution
      */
     public PythonEnvHandler() throws PythonError, InterruptedException, IOException {
+        long start = System.nanoTime(); 
     	this.init();
         this.installPackages();
+        bootstrapMillis = (System.nanoTime() - start) / 1_000_000; 
+        System.out.println("Python environment ready in " + bootstrapMillis + " ms");
     }
     
     /**
@@ -70,6 +103,7 @@ public class PythonEnvHandler {
     
             if (exitCode != 0) throw new PythonError("Unable to find Python installation, code " + exitCode); 
 
+            venvCreated = true; 
             pip = OUTPUT_PATH + "venv/bin/pip"; 
             python = OUTPUT_PATH + "venv/bin/python3"; 
 
@@ -128,7 +162,9 @@ public class PythonEnvHandler {
     }
 
     /**
-     * Installed all packages required via pip. 
+     * Copies the bundled model and scripts to the cache folder and installs all packages required via pip. 
+     * <p>A manifest of resource hashes is kept in {@code BOOTSTRAP_MANIFEST}, so a resource is only copied when it 
+     * changed or its copy is missing, and pip only runs when {@code requirements.txt} changed or the venv was just created.</p>
      * @throws PythonError If venv/pip is not initialized or installed. 
      * @throws IOException If reading/writing to CLI fails
      * @throws InterruptedException If underlying Python script fails mid-execution
@@ -151,28 +187,70 @@ public class PythonEnvHandler {
 
         ClassLoader c = this.getClass().getClassLoader(); 
 
-        InputStream modelIS = c.getResourceAsStream("models/model_state_dict.pth");
-        InputStream predictorIS = c.getResourceAsStream("models/predictor_state_dict.pth");
-        InputStream reqsIS = c.getResourceAsStream("requirements.txt");
-        InputStream demoIS = c.getResourceAsStream("demo.py");
-        InputStream modelsIS = c.getResourceAsStream("models.py");
+        Path manifestPath = Paths.get(OUTPUT_PATH + BOOTSTRAP_MANIFEST); 
+        Properties manifest = new Properties(); 
+        if (Files.exists(manifestPath)) {
+            try (InputStream is = Files.newInputStream(manifestPath)) {
+                manifest.load(is);
+            }
+        }
 
-        Files.copy(modelIS, Paths.get(OUTPUT_PATH + "models/model_state_dict.pth"), StandardCopyOption.REPLACE_EXISTING); 
-        Files.copy(predictorIS, Paths.get(OUTPUT_PATH + "models/predictor_state_dict.pth"), StandardCopyOption.REPLACE_EXISTING); 
-        Files.copy(reqsIS, Paths.get(OUTPUT_PATH + "requirements.txt"), StandardCopyOption.REPLACE_EXISTING); 
-        Files.copy(demoIS, Paths.get(OUTPUT_PATH + "scripts/demo.py"), StandardCopyOption.REPLACE_EXISTING); 
-        Files.copy(modelsIS, Paths.get(OUTPUT_PATH + "scripts/models.py"), StandardCopyOption.REPLACE_EXISTING); 
+        for (int i = 0; i<RESOURCES.length; i++) {
+            String hash = Fingerprint.ofResource(c, RESOURCES[i]); 
+            resourceHashes.put(RESOURCES[i], hash); 
+            Path target = Paths.get(OUTPUT_PATH + RESOURCE_TARGETS[i]); 
+            if (!hash.equals(manifest.getProperty(RESOURCES[i])) || !Files.exists(target)) {
+                try (InputStream is = c.getResourceAsStream(RESOURCES[i])) {
+                    Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING); 
+                }
+                manifest.setProperty(RESOURCES[i], hash); 
+            }
+        }
 
-        String[] pythonCommand = {pip, "install",  "-r", OUTPUT_PATH + "requirements.txt"}; 
-    
-        System.out.println("Executing command: " + Arrays.toString(pythonCommand));
-        Process process = Runtime.getRuntime().exec(pythonCommand);
+        String requirements = resourceHashes.get("requirements.txt"); 
+        if (venvCreated || !requirements.equals(manifest.getProperty("pip"))) {
+            // Drop the stamp first so an interrupted install is retried next launch
+            manifest.remove("pip"); 
+            writeManifest(manifest, manifestPath);
 
-        int exitCode = process.waitFor();
+            String[] pythonCommand = {pip, "install",  "-r", OUTPUT_PATH + "requirements.txt"}; 
         
+            System.out.println("Executing command: " + Arrays.toString(pythonCommand));
+            ProcessBuilder pb = new ProcessBuilder(pythonCommand); 
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(OUTPUT_PATH + "pip.log")));
+            Process process = pb.start();
 
-        if (exitCode != 0) throw new PythonError("Unable to find Python installation, code " + exitCode); 
+            int exitCode = process.waitFor();
+            
+
+            if (exitCode != 0) throw new PythonError("Unable to find Python installation, code " + exitCode); 
+
+            manifest.setProperty("pip", requirements); 
+        }
+        writeManifest(manifest, manifestPath);
+    }
+
+    private static void writeManifest(Properties manifest, Path manifestPath) throws IOException {
+        try (OutputStream os = Files.newOutputStream(manifestPath)) {
+            manifest.store(os, "Songsorter bootstrap manifest, SHA-256 of each copied resource");
+        }
+    }
+
+    /**
+     * Gets the SHA-256 of each bundled resource, computed by {@code installPackages()}
+     * @return map from resource name to lowercase hex hash
+     */
+    public Map<String, String> getResourceHashes() {
+        return Collections.unmodifiableMap(resourceHashes); 
+    }
 
+    /**
+     * Gets how long the constructor took to create the venv, copy resources and install packages
+     * @return bootstrap time in milliseconds
+     */
+    public long getBootstrapMillis() {
+        return bootstrapMillis; 
     }
 
     /**
@@ -184,9 +262,8 @@ public class PythonEnvHandler {
      * @throws InterruptedException If underlying Python script fails mid-execution
      */
     public String runCommand(String fp) throws PythonError, IOException, InterruptedException {
-        String[] pythonCommand = {python, OUTPUT_PATH + "scripts/demo.py", fp}; 
-        System.out.println("Executing command: " + Arrays.toString(pythonCommand));
-        Process process = Runtime.getRuntime().exec(pythonCommand);
+        PythonProcessEvent event = new PythonProcessEvent(); 
+        Process process = spawn(fp, event); 
 
         StringBuilder output = new StringBuilder();
 
@@ -197,34 +274,276 @@ public class PythonEnvHandler {
             }
         }
 
+        awaitExit(process, event, fp, output.length()); 
+        return output.toString(); 
+    }
+
+    /**
+     * Computes the emotions like {@code runCommand()}, but parses the tensor with a {@code TensorParser} as the 
+     * process prints it instead of collecting the output first
+     * @param fp Path to the mp3 file
+     * @return the {@code EmotionSeries} of the clip
+     * @throws PythonError If an error occurs within python, python is not installed, or the venv is not initilaized. 
+     * @throws TensorFormatException If the process succeeded but did not print an n x 2 tensor
+     * @throws IOException If reading/writing to CLI fails
+     * @throws InterruptedException If underlying Python script fails mid-execution
+     */
+    public EmotionSeries runAndParse(String fp) throws PythonError, IOException, InterruptedException {
+        PythonProcessEvent event = new PythonProcessEvent(); 
+        Process process = spawn(fp, event); 
+
+        TensorParser parser; 
+        EmotionSeries series = null; 
+        TensorFormatException malformed = null; 
+        try (InputStream in = process.getInputStream()) {
+            parser = new TensorParser(in); 
+            try {
+                series = parser.parse(); 
+            } catch (TensorFormatException e) {
+                // Reported after the exit code, a crash usually leaves no tensor at all
+                malformed = e; 
+                in.transferTo(OutputStream.nullOutputStream()); 
+            }
+        }
+
+        awaitExit(process, event, fp, parser.position()); 
+        if (malformed != null) throw malformed; 
+        return series; 
+    }
+
+    private Process spawn(String fp, PythonProcessEvent event) throws IOException {
+        String[] pythonCommand = {python, OUTPUT_PATH + "scripts/demo.py", fp}; 
+        Metrics.shared().counter("python.processes").increment();
+        event.begin();
+        long spawnStart = System.nanoTime(); 
+        Process process = Runtime.getRuntime().exec(pythonCommand);
+        event.spawnTime = System.nanoTime() - spawnStart; 
+        return process; 
+    }
+
+    private static void awaitExit(Process process, PythonProcessEvent event, String fp, long outputBytes) throws PythonError, InterruptedException {
         int exitCode = process.waitFor();
-        
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = fp; 
+            event.pid = process.pid(); 
+            event.exitCode = exitCode; 
+            event.outputBytes = outputBytes; 
+            event.commit();
+        }
 
         if (exitCode != 0) throw new PythonError("Unable to find Python installation, code " + exitCode); 
+    }
 
-        return output.toString(); 
+    /**
+     * Computes the emotions via the persistent {@code PythonWorkerPool} when it is available, so the model
+     * is only loaded once per worker and replies in binary when the worker supports it. Safe to call from several threads at once. 
+     * Falls back to {@code runAndParse()} if the worker cannot be started or keeps crashing. 
+     * <p>Worker mode can be disabled with {@code -Dsongsorter.worker=false}</p>
+     * @param fp Path to the mp3 file
+     * @return the {@code EmotionSeries} of the clip, bypassing the {@code EmotionCache}
+     * @throws PythonError If an error occurs within python, python is not installed, or the venv is not intitialized. 
+     * @throws IOException If reading/writing to CLI fails
+     * @throws InterruptedException If underlying Python script fails mid-execution
+     */
+    public EmotionSeries analyze(String fp) throws PythonError, IOException, InterruptedException {
+        long t0 = System.nanoTime(); 
+        EmotionSeries points = null; 
+        if (useWorker) {
+            try {
+                points = getPool().analyze(fp); 
+            } catch (IOException e) {
+                System.out.println("Python worker unavailable, falling back to a single process: " + e.getMessage());
+            }
+        }
+        if (points == null) {
+            points = runAndParse(fp); 
+        }
+        // Reading the reply overlaps the inference, so both are one sample
+        Metrics.shared().histogram("python.inference").recordSince(t0);
+        return points; 
     }
 
     /**
-     * Parses the output of Python to an array of {@code EmotionPoint} objects which are typically linked to a song
-     * @param s The string input which should be taken from {@code runCommand()}, a printed Pytorch tensor of dimesnions nx2. 
-     * @return the array of {@code EmotionPoint} objects that was shown in a Torch tensor. 
-     */
-    public static EmotionPoint[] parseOut(String s) {
-        s = s.substring(8, s.lastIndexOf(']')); 
-        String[] splitted = s.split(",");
-        EmotionPoint[] points = new EmotionPoint[splitted.length/2]; 
-        for (int i=0; i<splitted.length-1; i+=2) {
-            points[i/2] = new EmotionPoint(
-                Double.parseDouble(splitted[i].substring(splitted[i].indexOf('[')+1)), 
-                Double.parseDouble(splitted[i+1].substring(0, splitted[i+1].length()-1).strip())
-            ); 
+     * Computes and parses the emotions of an mp3 file, or returns them from the {@code EmotionCache} without 
+     * touching Python if the same audio was already analyzed by the bundled model. 
+     * @param fp Path to the mp3 file
+     * @return the {@code EmotionSeries} of the clip, one sample every 0.5 seconds
+     * @throws PythonError If an error occurs within python, python is not installed, or the venv is not intitialized. 
+     * @throws IOException If reading/writing to CLI fails
+     * @throws InterruptedException If underlying Python script fails mid-execution
+     */
+    public EmotionSeries computeEmotions(String fp) throws PythonError, IOException, InterruptedException {
+        EmotionSeries points = getCache().get(fp); 
+        if (points == null) {
+            Metrics.shared().counter("python.cache.misses").increment();
+            points = analyze(fp); 
+            getCache().put(fp, points);
+        } else {
+            Metrics.shared().counter("python.cache.hits").increment();
+        }
+        return points; 
+    }
+
+    /**
+     * Computes and parses the emotions of several mp3 files. With worker mode the clips are analyzed in one model 
+     * invocation, otherwise each is passed to {@code runAndParse()}. 
+     * @param fps Paths to the mp3 files
+     * @return the {@code EmotionSeries} for each path in order, or {@code null} where the model failed on that clip
+     * @throws PythonError If python is not installed, or the venv is not intitialized. 
+     * @throws IOException If reading/writing to CLI fails
+     * @throws InterruptedException If underlying Python script fails mid-execution
+     */
+    public EmotionSeries[] computeEmotions(List<String> fps) throws PythonError, IOException, InterruptedException {
+        EmotionSeries[] points = new EmotionSeries[fps.size()]; 
+        // Indices of the clips that are not cached, uncached.get(i) is fps.get(missing[i])
+        int[] missing = new int[points.length]; 
+        List<String> uncached = new ArrayList<String>(); 
+        for (int i = 0; i<points.length; i++) {
+            points[i] = getCache().get(fps.get(i)); 
+            if (points[i] == null) {
+                missing[uncached.size()] = i; 
+                uncached.add(fps.get(i)); 
+            }
+        }
+        Metrics.shared().counter("python.cache.hits").add(points.length - uncached.size());
+        Metrics.shared().counter("python.cache.misses").add(uncached.size());
+        if (uncached.isEmpty()) {
+            return points; 
+        }
+
+        // One sample per model invocation, python.batch.songs counts the songs they covered
+        long t0 = System.nanoTime(); 
+        EmotionSeries[] parsed = null; 
+        if (useWorker) {
+            try {
+                parsed = getPool().analyzeBatch(uncached); 
+            } catch (IOException e) {
+                System.out.println("Python worker unavailable, falling back to a single process: " + e.getMessage());
+            }
+        }
+        if (parsed == null) {
+            parsed = new EmotionSeries[uncached.size()]; 
+            for (int i = 0; i<parsed.length; i++) {
+                try {
+                    parsed[i] = runAndParse(uncached.get(i)); 
+                } catch (PythonError | TensorFormatException e) {
+                    System.out.println("Python failed on " + uncached.get(i) + ": " + e.getMessage());
+                }
+            }
+        }
+        Metrics.shared().histogram("python.inference.batch").recordSince(t0);
+        Metrics.shared().counter("python.batch.songs").add(parsed.length);
+
+        for (int i = 0; i<parsed.length; i++) {
+            if (parsed[i] != null) {
+                points[missing[i]] = parsed[i]; 
+                getCache().put(uncached.get(i), parsed[i]);
+            }
         }
         return points; 
     }
+
+    /**
+     * Gets the on-disk result cache for the bundled model, opening it on first use
+     * @return the {@code EmotionCache} for this environment
+     * @throws IOException If the model resources cannot be read or the cache directory cannot be created
+     */
+    public synchronized EmotionCache getCache() throws IOException {
+        if (cache == null) {
+            if (resourceHashes.isEmpty()) {
+                cache = new EmotionCache(); 
+            } else {
+                cache = new EmotionCache(Paths.get(OUTPUT_PATH, "emotions"), EmotionCache.modelFingerprint(resourceHashes)); 
+            }
+        }
+        return cache; 
+    }
+
+    /**
+     * Gets the pool of persistent workers, creating it with {@code PythonWorkerPool.defaultSize()} workers on first use
+     * @return the {@code PythonWorkerPool} for this environment
+     */
+    public synchronized PythonWorkerPool getPool() {
+        if (pool == null) {
+            pool = new PythonWorkerPool(python, OUTPUT_PATH + "scripts/demo.py", PythonWorkerPool.defaultSize()); 
+        }
+        return pool; 
+    }
+
+    /**
+     * Opens the result cache and starts the worker processes in the background so the model is already loaded 
+     * when the first song is analyzed. Returns immediately. 
+     */
+    public void warmUp() {
+        try {
+            getCache(); 
+        } catch (IOException e) {
+            System.out.println("Unable to open the emotion cache: " + e.getMessage());
+        }
+        if (useWorker) {
+            getPool().warmUp();
+        }
+    }
+
+    /**
+     * Runs a task on one of the inference threads, so many songs can be analyzed concurrently
+     * @param <T> result type of the task
+     * @param task the task, typically one that calls {@code Song.setEmotions()}
+     * @return a {@code Future} for the result of the task
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return getPool().submit(task); 
+    }
+
+    /**
+     * Waits for every submitted task to finish, then rethrows the first failure, if any. 
+     * @param tasks the {@code Future}s returned by {@code submit()}
+     * @throws PythonError If a task failed within Python
+     * @throws IOException If reading/writing to CLI failed in a task
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static void awaitAll(Collection<? extends Future<?>> tasks) throws PythonError, IOException, InterruptedException {
+        Throwable failure = null; 
+        for (Future<?> f: tasks) {
+            try {
+                f.get(); 
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause(); 
+            }
+        }
+        if (failure instanceof PythonError pe) throw pe; 
+        if (failure instanceof IOException ioe) throw ioe; 
+        if (failure instanceof InterruptedException ie) throw ie; 
+        if (failure instanceof RuntimeException re) throw re; 
+        if (failure != null) throw new PythonError(failure.toString()); 
+    }
+
+    /**
+     * Stops the persistent worker processes if any are running
+     */
+    public synchronized void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Parses the output of Python to an {@code EmotionSeries} which is typically linked to a song
+     * @param s The string input which should be taken from {@code runCommand()}, a printed Pytorch tensor of dimesnions nx2. 
+     * Workers that support the binary protocol skip this, see {@code PythonWorker}. 
+     * @return the {@code EmotionSeries} that was shown in a Torch tensor. 
+     * @throws TensorFormatException If the output is not an n x 2 tensor, with the line and column that could not be parsed
+     */
+    public static EmotionSeries parseOut(String s) {
+        long t0 = System.nanoTime(); 
+        EmotionSeries series = TensorParser.parse(s); 
+        Metrics.shared().histogram("python.parse").recordSince(t0);
+        return series; 
+    }
     
     /**
-     * Cleares the cache folder of all downloaded songs, but not the venv or any of the scripts. 
+     * Cleares the cache folder of all downloaded songs, but not the venv, any of the scripts, or the {@code EmotionCache}. 
      * Deleting the venv must be done manually, but can clear upwards of 2 GB. 
      */
     public static void clearCache() {
@@ -232,7 +551,8 @@ public class PythonEnvHandler {
         if(files!=null) { 
             for(File f: files) {
                 if (!f.getName().equals("venv") && !f.getName().equals("requirements.txt") && 
-                    !f.getName().equals("scripts") && !f.getName().equals("models"))
+                    !f.getName().equals("scripts") && !f.getName().equals("models") && !f.getName().equals("emotions") && 
+                    !f.getName().equals(BOOTSTRAP_MANIFEST))
                     f.delete();
             }
         }
@@ -0,0 +1,402 @@
+package songsorter.python;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import songsorter.jfr.PythonProcessEvent;
+import songsorter.music.EmotionSeries;
+
+/**
+ * A long lived {@code demo.py --worker} process which loads the model once and then reads one
+ * file path per line from stdin. Each reply is the printed Pytorch tensor followed by an {@code END} line,
+ * or a single {@code ERROR} line if the clip could not be analyzed.
+ * <p>Once the model is loaded the worker is sent {@code HELLO 2}. A script that understands it answers with the
+ * version both sides support, and version 2 replies with a binary {@code ResultFrame} instead of the printed tensor.
+ * Older scripts answer with an {@code ERROR} line and keep the text replies, as does {@code -Dsongsorter.binary=false}.</p>
+ * <p>The worker is restarted automatically if the process dies, or if it does not reply within {@code TIMEOUT_SECONDS}
+ * per clip, in which case it is killed and restarted like a crashed one. A single worker handles one request at a time.
+ * Each process is recorded as a {@code PythonProcessEvent} from spawn to exit.</p>
+ */
+public class PythonWorker implements AutoCloseable {
+    /** Number of times a request is retried on a fresh process before the worker is considered broken */
+    public static final int MAX_RESTARTS = 2;
+
+    /** Newest result protocol offered to the worker, 1 is the printed tensor */
+    public static final int PROTOCOL_VERSION = ResultFrame.VERSION;
+
+    /** If binary replies are offered, set with {@code -Dsongsorter.binary=false} to always use text */
+    public static final boolean BINARY = !"false".equals(System.getProperty("songsorter.binary"));
+
+    /** Longest wait for the reply to one clip before the process is killed, set with {@code -Dsongsorter.worker.timeout=SECONDS} */
+    public static final int TIMEOUT_SECONDS = Integer.getInteger("songsorter.worker.timeout", 60);
+
+    // Kills processes that miss their deadline, which ends the blocked read like a crash would
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "songsorter-worker-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String python, script;
+    private final int threads;
+    private Process process;
+    private InputStream stdout;
+    private BufferedWriter writer;
+    private int restarts;
+    private int protocol = 1;
+    private final ResultFrame frame = new ResultFrame();
+    private PythonProcessEvent event;
+    private int requests;
+    private long lastUsed = System.nanoTime();
+    private volatile boolean timedOut;
+
+    /**
+     * Creates a worker, the process is not started until it is first needed or {@code start()} is called
+     * @param python filepath of the python3 installation to run the worker with
+     * @param script filepath of {@code demo.py}
+     */
+    public PythonWorker(String python, String script) {
+        this(python, script, 0);
+    }
+
+    /**
+     * Creates a worker limited to a number of Pytorch threads, used when several workers share the CPU
+     * @param python filepath of the python3 installation to run the worker with
+     * @param script filepath of {@code demo.py}
+     * @param threads number of intra-op threads for the worker, or 0 to let Pytorch decide
+     */
+    public PythonWorker(String python, String script, int threads) {
+        this.python = python;
+        this.script = script;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts the worker process and blocks until the model has been loaded and the protocol is agreed on
+     * @throws IOException If the process cannot be started or exits before it is ready
+     */
+    public synchronized void start() throws IOException {
+        if (isAlive()) {
+            return;
+        }
+        String[] pythonCommand = {python, script, "--worker"};
+        System.out.println("Executing command: " + Arrays.toString(pythonCommand));
+        ProcessBuilder pb = new ProcessBuilder(pythonCommand);
+        if (threads > 0) {
+            pb.environment().put("OMP_NUM_THREADS", String.valueOf(threads));
+        }
+        pb.redirectError(ProcessBuilder.Redirect.appendTo(new File(PythonEnvHandler.OUTPUT_PATH + "worker.log")));
+        PythonProcessEvent e = new PythonProcessEvent();
+        e.begin();
+        long spawnStart = System.nanoTime();
+        process = pb.start();
+        e.spawnTime = System.nanoTime() - spawnStart;
+        e.worker = true;
+        e.restart = restarts;
+        event = e;
+        requests = 0;
+        stdout = new BufferedInputStream(process.getInputStream());
+        writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.equals("READY")) {
+                protocol = BINARY ? negotiate() : 1;
+                lastUsed = System.nanoTime();
+                return;
+            }
+        }
+        destroy();
+        throw new IOException("Python worker exited before it was ready");
+    }
+
+    private int negotiate() throws IOException {
+        writer.write("HELLO " + PROTOCOL_VERSION + "\n");
+        writer.flush();
+        String reply = readLine();
+        if (reply == null) {
+            destroy();
+            throw new IOException("Python worker exited before it was ready");
+        }
+        if (reply.startsWith("HELLO ")) {
+            try {
+                return Math.min(PROTOCOL_VERSION, Integer.parseInt(reply.substring(6).strip()));
+            } catch (NumberFormatException e) {
+                // Treated like a script without versions
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Gets the result protocol agreed on with the running process
+     * @return 2 for binary frames, 1 for the printed tensor
+     */
+    public synchronized int getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Gets how long the worker has been waiting since its last request, or since it started
+     * @return idle time in nanoseconds
+     */
+    public synchronized long getIdleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    /**
+     * Checks if the worker process is currently running
+     * @return if the process is alive
+     */
+    public synchronized boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * Health check which sends {@code PING} to the worker and waits for {@code PONG}.
+     * An unresponsive worker is killed so that the next request restarts it.
+     * @param timeoutMillis how long to wait for the reply
+     * @return if the worker replied in time
+     */
+    public synchronized boolean ping(long timeoutMillis) {
+        if (!isAlive()) {
+            return false;
+        }
+        try {
+            writer.write("PING\n");
+            writer.flush();
+            InputStream in = stdout;
+            CompletableFuture<String> reply = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readLine(in);
+                } catch (IOException e) {
+                    return null;
+                }
+            });
+            if ("PONG".equals(reply.get(timeoutMillis, TimeUnit.MILLISECONDS))) {
+                return true;
+            }
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            // Falls through to destroy the worker
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        destroy();
+        return false;
+    }
+
+    /**
+     * Computes the emotions of a clip in the worker, restarting the process if it has crashed.
+     * @param fp Path to the mp3 file
+     * @return the {@code EmotionSeries} of the clip
+     * @throws PythonError If the model failed on this clip
+     * @throws IOException If the worker could not be (re)started after {@code MAX_RESTARTS} attempts
+     */
+    public synchronized EmotionSeries analyze(String fp) throws PythonError, IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt <= MAX_RESTARTS; attempt++) {
+            try {
+                start();
+                ScheduledFuture<?> deadline = deadline(1);
+                EmotionSeries out;
+                try {
+                    out = request(fp);
+                } finally {
+                    deadline.cancel(false);
+                    lastUsed = System.nanoTime();
+                }
+                requests++;
+                restarts = 0;
+                return out;
+            } catch (IOException e) {
+                failure = timedOut ? new IOException("Python worker did not reply to " + fp + " within " + TIMEOUT_SECONDS + " seconds", e) : e;
+                restarts++;
+                destroy();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Computes the emotions of several clips with one model invocation, restarting the process if it has crashed.
+     * @param fps Paths to the mp3 files
+     * @return the {@code EmotionSeries} for each path in order, or {@code null} where the model failed on that clip
+     * @throws IOException If the worker could not be (re)started after {@code MAX_RESTARTS} attempts
+     */
+    public synchronized EmotionSeries[] analyzeBatch(List<String> fps) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt <= MAX_RESTARTS; attempt++) {
+            try {
+                start();
+                EmotionSeries[] out = new EmotionSeries[fps.size()];
+                ScheduledFuture<?> deadline = deadline(fps.size());
+                try {
+                    writer.write("BATCH " + fps.size() + "\n");
+                    for (String fp : fps) {
+                        writer.write(fp);
+                        writer.write('\n');
+                    }
+                    writer.flush();
+
+                    for (int i = 0; i < out.length; i++) {
+                        try {
+                            out[i] = readResult(fps.get(i));
+                        } catch (PythonError e) {
+                            System.out.println(e.getMessage());
+                        }
+                    }
+                } finally {
+                    deadline.cancel(false);
+                    lastUsed = System.nanoTime();
+                }
+                requests += out.length;
+                restarts = 0;
+                return out;
+            } catch (IOException e) {
+                failure = timedOut ? new IOException("Python worker did not reply to a batch of " + fps.size() + " within " + (long) TIMEOUT_SECONDS * fps.size() + " seconds", e) : e;
+                restarts++;
+                destroy();
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Gets the number of consecutive restarts since the last successful request
+     * @return number of restarts
+     */
+    public synchronized int getRestarts() {
+        return restarts;
+    }
+
+    private ScheduledFuture<?> deadline(int clips) {
+        Process p = process;
+        timedOut = false;
+        return WATCHDOG.schedule(() -> {
+            timedOut = true;
+            p.destroyForcibly();
+        }, (long) TIMEOUT_SECONDS * clips, TimeUnit.SECONDS);
+    }
+
+    private EmotionSeries request(String fp) throws PythonError, IOException {
+        writer.write(fp);
+        writer.write('\n');
+        writer.flush();
+        return readResult(fp);
+    }
+
+    private EmotionSeries readResult(String fp) throws PythonError, IOException {
+        if (protocol >= ResultFrame.VERSION) {
+            stdout.mark(1);
+            int first = stdout.read();
+            stdout.reset();
+            if (first == ResultFrame.MAGIC[0]) {
+                return frame.read(stdout);
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.equals("END")) {
+                try {
+                    return TensorParser.parse(output);
+                } catch (TensorFormatException e) {
+                    throw new PythonError("Worker replied to " + fp + " with " + e.getMessage());
+                }
+            }
+            if (line.startsWith("ERROR")) {
+                throw new PythonError("Worker failed on " + fp + ": " + line.substring(5).strip());
+            }
+            output.append(line).append("\n");
+        }
+        throw new IOException("Python worker exited mid-request, code " + exitCode());
+    }
+
+    private String readLine() throws IOException {
+        return readLine(stdout);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private int exitCode() {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private void destroy() {
+        if (process != null) {
+            process.destroyForcibly();
+            recordExit();
+            process = null;
+        }
+    }
+
+    private void recordExit() {
+        PythonProcessEvent e = event;
+        event = null;
+        if (e == null) {
+            return;
+        }
+        e.end();
+        if (e.shouldCommit()) {
+            e.pid = process.pid();
+            e.requests = requests;
+            try {
+                e.exitCode = process.waitFor(1, TimeUnit.SECONDS) ? process.exitValue() : -1;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                e.exitCode = -1;
+            }
+            e.commit();
+        }
+    }
+
+    /**
+     * Asks the worker to exit and kills it if it does not
+     */
+    @Override
+    public synchronized void close() {
+        if (isAlive()) {
+            try {
+                writer.write("QUIT\n");
+                writer.flush();
+                process.waitFor(2, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                // Process is already gone
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        destroy();
+    }
+}
@@ -0,0 +1,174 @@
+package songsorter.python;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import songsorter.music.EmotionSeries;
+
+/**
+ * A fixed size pool of {@code PythonWorker}s. Requests borrow an idle worker, so up to {@code size()}
+ * clips are analyzed at once, and tasks submitted with {@code submit()} run on a matching number of threads.
+ * <p>The size can be set with {@code -Dsongsorter.workers=N}, by default it is the number of cores limited by
+ * how many model processes fit in physical memory.</p>
+ * <p>A worker that has been idle for longer than {@code IDLE_CHECK_SECONDS} is pinged before it is handed out, and
+ * restarted by the request if it does not answer.</p>
+ */
+public class PythonWorkerPool implements AutoCloseable {
+    /** Rough resident size of one worker process with torch and the model loaded */
+    public static final long WORKER_MEMORY = 768L * 1024 * 1024;
+
+    /** Idle time after which a worker is health checked before use, set with {@code -Dsongsorter.worker.idlecheck=SECONDS} */
+    public static final int IDLE_CHECK_SECONDS = Integer.getInteger("songsorter.worker.idlecheck", 30);
+
+    /** Longest wait for the reply to a health check */
+    public static final long PING_TIMEOUT_MILLIS = 5000;
+
+    private final PythonWorker[] workers;
+    private final BlockingQueue<PythonWorker> idle;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a pool, the worker processes are started lazily on their first request
+     * @param python filepath of the python3 installation to run the workers with
+     * @param script filepath of {@code demo.py}
+     * @param n number of workers
+     */
+    public PythonWorkerPool(String python, String script, int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Pool needs at least one worker");
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = n == 1 ? 0 : Math.max(1, cores / n);
+
+        workers = new PythonWorker[n];
+        idle = new ArrayBlockingQueue<PythonWorker>(n);
+        for (int i = 0; i < n; i++) {
+            workers[i] = new PythonWorker(python, script, threads);
+            idle.add(workers[i]);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "songsorter-inference-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Gets the default pool size from {@code songsorter.workers}, or the number of cores limited by physical memory
+     * @return number of workers to use
+     */
+    public static int defaultSize() {
+        String prop = System.getProperty("songsorter.workers");
+        if (prop != null) {
+            return Math.max(1, Integer.parseInt(prop.strip()));
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        long memory = Long.MAX_VALUE;
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            // Leave half of the machine for the JVM and everything else
+            memory = os.getTotalMemorySize() / 2;
+        }
+        return (int) Math.max(1, Math.min(cores, memory / WORKER_MEMORY));
+    }
+
+    /**
+     * Gets the number of workers in the pool
+     * @return pool size
+     */
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Starts every worker process in the background so the model is loaded before the first request.
+     * A request that arrives while a worker is still starting waits for it to become ready.
+     */
+    public void warmUp() {
+        for (PythonWorker w : workers) {
+            executor.submit(() -> {
+                try {
+                    w.start();
+                } catch (IOException e) {
+                    System.out.println("Python worker failed to warm up: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Computes the emotions of a clip on the next idle worker, waiting for one if all are busy
+     * @param fp Path to the mp3 file
+     * @return the {@code EmotionSeries} of the clip
+     * @throws PythonError If the model failed on this clip
+     * @throws IOException If the worker could not be (re)started
+     * @throws InterruptedException If interrupted while waiting for a worker
+     */
+    public EmotionSeries analyze(String fp) throws PythonError, IOException, InterruptedException {
+        PythonWorker w = borrow();
+        try {
+            return w.analyze(fp);
+        } finally {
+            idle.put(w);
+        }
+    }
+
+    /**
+     * Computes the emotions of several clips with one model invocation on the next idle worker
+     * @param fps Paths to the mp3 files
+     * @return the {@code EmotionSeries} for each path in order, or {@code null} where the model failed on that clip
+     * @throws IOException If the worker could not be (re)started
+     * @throws InterruptedException If interrupted while waiting for a worker
+     */
+    public EmotionSeries[] analyzeBatch(List<String> fps) throws IOException, InterruptedException {
+        PythonWorker w = borrow();
+        try {
+            return w.analyzeBatch(fps);
+        } finally {
+            idle.put(w);
+        }
+    }
+
+    /**
+     * Takes the next idle worker, pinging it first if it has been idle for a while. A worker that does not answer is
+     * killed by {@code ping()} and restarted by the request.
+     */
+    private PythonWorker borrow() throws InterruptedException {
+        PythonWorker w = idle.take();
+        if (w.isAlive() && w.getIdleNanos() > TimeUnit.SECONDS.toNanos(IDLE_CHECK_SECONDS) && !w.ping(PING_TIMEOUT_MILLIS)) {
+            System.out.println("Python worker did not answer a health check and will be restarted");
+        }
+        return w;
+    }
+
+    /**
+     * Runs a task on one of the pool's inference threads
+     * @param <T> result type of the task
+     * @param task the task, typically one that calls {@code analyze()}
+     * @return a {@code Future} for the result of the task
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Stops all worker processes and the inference threads
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (PythonWorker w : workers) {
+            w.close();
+        }
+    }
+}
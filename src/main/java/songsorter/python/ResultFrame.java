@@ -0,0 +1,67 @@
+package songsorter.python;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import songsorter.music.EmotionSeries;
+
+/**
+ * Reader for the binary reply of {@code demo.py} in protocol version 2, which replaces the printed tensor. A frame is
+ * the magic bytes {@code SSEM}, the number of rows and of columns as little-endian int32s, then the arousal and
+ * valence of each row as little-endian float32s, so a 30 second preview is 492 bytes instead of about 1.7 KB of text.
+ * <p>The buffer is reused between frames, a reader belongs to one {@code PythonWorker}.</p>
+ */
+final class ResultFrame {
+    /** Protocol version that replies with frames */
+    static final int VERSION = 2;
+    /** First bytes of every frame, never the start of a text reply */
+    static final byte[] MAGIC = {'S', 'S', 'E', 'M'};
+    /** Length of the magic and the row and column counts */
+    static final int HEADER_BYTES = 12;
+
+    // About 40 days of audio, anything larger is a corrupt header
+    private static final int MAX_ROWS = 1 << 23;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 8 * 128).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Reads one frame
+     * @param in the stdout of the worker, positioned at the magic bytes
+     * @return the {@code EmotionSeries} in the frame
+     * @throws IOException If the stream ends mid-frame or the header is corrupt, the stream can not be used afterwards
+     */
+    EmotionSeries read(InputStream in) throws IOException {
+        readFully(in, HEADER_BYTES);
+        for (int i = 0; i<MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Python worker replied with a corrupt frame");
+            }
+        }
+        int rows = buffer.getInt(4);
+        int columns = buffer.getInt(8);
+        if (rows < 0 || rows > MAX_ROWS || columns != 2) {
+            throw new IOException("Python worker replied with a " + rows + " x " + columns + " frame, expected n x 2");
+        }
+
+        readFully(in, rows * 8);
+        float[] arousal = new float[rows];
+        float[] valence = new float[rows];
+        for (int i = 0; i<rows; i++) {
+            arousal[i] = buffer.getFloat(i * 8);
+            valence[i] = buffer.getFloat(i * 8 + 4);
+        }
+        return EmotionSeries.of(arousal, valence);
+    }
+
+    private void readFully(InputStream in, int n) throws IOException {
+        if (buffer.capacity() < n) {
+            buffer = ByteBuffer.allocate(Math.max(n, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.readNBytes(buffer.array(), 0, n) < n) {
+            throw new EOFException("Python worker exited mid-frame");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package songsorter.python;
+
+/**
+ * Exception for output of the model that is not a printed n x 2 Pytorch tensor, with the position of the first
+ * character that could not be parsed
+ */
+public class TensorFormatException extends RuntimeException {
+
+    private final long position;
+    private final int line, column;
+
+    /**
+     * Constructs a {@code TensorFormatException} with the specified message and position
+     * @param s the error message
+     * @param position offset of the character from the start of the output, counting from 0
+     * @param line line of the character, counting from 1
+     * @param column column of the character, counting from 1
+     */
+    public TensorFormatException(String s, long position, int line, int column) {
+        super(s);
+        this.position = position;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Gets the offset of the character that could not be parsed
+     * @return offset from the start of the output, counting from 0
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the line of the character that could not be parsed
+     * @return line, counting from 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Gets the column of the character that could not be parsed
+     * @return column, counting from 1
+     */
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,279 @@
+package songsorter.python;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import songsorter.music.EmotionSeries;
+
+/**
+ * Streaming parser for the n x 2 Pytorch tensor printed by {@code demo.py}, such as
+ * {@code tensor([[ 0.1234, -0.5678], [ 0.2345, -0.6789]])}, read one character at a time straight into
+ * primitive arrays.
+ * <p>Anything printed before {@code tensor(} and after the closing bracket, such as warnings or
+ * {@code device='mps:0'}, is skipped, and rows may be split over lines with any whitespace. Numbers are converted
+ * without creating strings unless they have more than 15 digits, so parsing allocates little besides the arrays of
+ * the series. Output that does not match throws a {@code TensorFormatException} with the line and column of the
+ * first character that could not be parsed.</p>
+ * <p>A parser reads one output and is not thread safe.</p>
+ */
+public final class TensorParser {
+    private static final char[] PREFIX = "tensor(".toCharArray();
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i<POW10.length; i++) {
+            POW10[i] = POW10[i-1] * 10;
+        }
+    }
+
+    // Source, exactly one is set
+    private final CharSequence text;
+    private final InputStream in;
+    private final byte[] buffer;
+    private int index, limit;
+
+    // Current character, -1 at the end of the output, and its position
+    private int c;
+    private long position;
+    private int line, column;
+
+    private final char[] token = new char[64];
+    private int tokenLength;
+
+    private double[] arousal, valence;
+    private int rows;
+
+    /**
+     * Creates a parser for output that has already been read, such as a reply of a {@code PythonWorker}
+     * @param text the output
+     */
+    public TensorParser(CharSequence text) {
+        this.text = text;
+        this.in = null;
+        this.buffer = null;
+        arousal = new double[Math.max(16, text.length() / 16)];
+        valence = new double[arousal.length];
+    }
+
+    /**
+     * Creates a parser that reads output as it is written, such as the stdout of a Python process
+     * @param in the output, which is read to the end but not closed
+     */
+    public TensorParser(InputStream in) {
+        this.text = null;
+        this.in = in;
+        this.buffer = new byte[8192];
+        arousal = new double[128];
+        valence = new double[arousal.length];
+    }
+
+    /**
+     * Parses a printed tensor
+     * @param text the output of {@code demo.py}
+     * @return the {@code EmotionSeries} that was shown in the tensor
+     * @throws TensorFormatException If the output is not an n x 2 tensor
+     */
+    public static EmotionSeries parse(CharSequence text) {
+        try {
+            return new TensorParser(text).parse();
+        } catch (IOException e) {
+            // Only reading from a stream can fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the output to the end and parses the tensor in it, this can only be called once
+     * @return the {@code EmotionSeries} that was shown in the tensor
+     * @throws TensorFormatException If the output is not an n x 2 tensor
+     * @throws IOException If reading the stream fails
+     */
+    public EmotionSeries parse() throws IOException {
+        c = 0;
+        position = -1;
+        line = 1;
+        column = 0;
+        advance();
+
+        skipToTensor();
+        skipSpace();
+        expect('[', "'['");
+        skipSpace();
+        if (c != ']') {
+            while (true) {
+                row();
+                skipSpace();
+                if (c == ']') break;
+                expect(',', "',' or ']'");
+                skipSpace();
+            }
+        }
+        // The rest is the device, dtype or grad_fn of the tensor
+        while (c >= 0) {
+            advance();
+        }
+        return EmotionSeries.of(Arrays.copyOf(arousal, rows), Arrays.copyOf(valence, rows));
+    }
+
+    /**
+     * Gets the number of characters read, which is the length of the output once {@code parse()} returns
+     * @return characters or bytes read
+     */
+    public long position() {
+        return Math.max(position, 0);
+    }
+
+    private void skipToTensor() throws IOException {
+        int matched = 0;
+        while (matched < PREFIX.length) {
+            if (c < 0) throw fail("Expected a tensor but found " + found());
+            if (c == PREFIX[matched]) {
+                matched++;
+            } else {
+                matched = c == PREFIX[0] ? 1 : 0;
+            }
+            advance();
+        }
+    }
+
+    private void row() throws IOException {
+        if (c == '.') throw fail("Summarized tensor, the print threshold is too low");
+        expect('[', "'['");
+        skipSpace();
+        double a = number();
+        skipSpace();
+        expect(',', "','");
+        skipSpace();
+        double v = number();
+        skipSpace();
+        if (c == ',') throw fail("Expected two columns but found a third");
+        expect(']', "']'");
+
+        if (rows == arousal.length) {
+            arousal = Arrays.copyOf(arousal, rows * 2);
+            valence = Arrays.copyOf(valence, rows * 2);
+        }
+        arousal[rows] = a;
+        valence[rows] = v;
+        rows++;
+    }
+
+    private double number() throws IOException {
+        tokenLength = 0;
+        boolean negative = c == '-';
+        if (c == '-' || c == '+') {
+            take();
+        }
+        if (c == 'n') {
+            literal("nan");
+            return Double.NaN;
+        }
+        if (c == 'i') {
+            literal("inf");
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        while (c >= '0' && c <= '9') {
+            if (digits++ < 15) mantissa = mantissa * 10 + (c - '0');
+            take();
+        }
+        if (c == '.') {
+            take();
+            while (c >= '0' && c <= '9') {
+                if (digits++ < 15) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    exponent--;
+                }
+                take();
+            }
+        }
+        if (digits == 0) throw fail("Expected a number but found " + found());
+        if (c == 'e' || c == 'E') {
+            take();
+            boolean negativeExponent = c == '-';
+            if (c == '-' || c == '+') {
+                take();
+            }
+            if (c < '0' || c > '9') throw fail("Expected an exponent but found " + found());
+            int e = 0;
+            while (c >= '0' && c <= '9') {
+                e = Math.min(e * 10 + (c - '0'), 1000);
+                take();
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (digits > 15 || exponent < -22 || exponent > 22) {
+            // Too precise to convert exactly with one multiplication or division
+            return Double.parseDouble(new String(token, 0, tokenLength));
+        }
+        // Both operands are exact doubles, so the result is correctly rounded
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        return negative ? -value : value;
+    }
+
+    private void literal(String word) throws IOException {
+        for (int i = 0; i<word.length(); i++) {
+            if (c != word.charAt(i)) throw fail("Expected '" + word + "' but found " + found());
+            advance();
+        }
+    }
+
+    private void take() throws IOException {
+        if (tokenLength == token.length) throw fail("Number is too long");
+        token[tokenLength++] = (char) c;
+        advance();
+    }
+
+    private void skipSpace() throws IOException {
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            advance();
+        }
+    }
+
+    private void expect(char expected, String description) throws IOException {
+        if (c != expected) throw fail("Expected " + description + " but found " + found());
+        advance();
+    }
+
+    private void advance() throws IOException {
+        if (c == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+        position++;
+        c = read();
+    }
+
+    private int read() throws IOException {
+        if (text != null) {
+            return index < text.length() ? text.charAt(index++) : -1;
+        }
+        if (index == limit) {
+            limit = in.read(buffer);
+            index = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[index++] & 0xFF;
+    }
+
+    private String found() {
+        if (c < 0) return "the end of the output";
+        if (c < ' ' || c > '~') return String.format("U+%04X", c);
+        return "'" + (char) c + "'";
+    }
+
+    private TensorFormatException fail(String message) {
+        return new TensorFormatException(message + " at line " + line + ", column " + column + " of the model output, after "
+            + rows + " rows", position, line, column);
+    }
+}
@@ -2,38 +2,70 @@ package songsorter.queue;
 
 // Etash Jhanji
 
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
- * Array-based/index-based implementation of the {@code QueueInterface}. 
- * @param <E> the object type of the {@code ArrayQueue}. 
+ * Array-based/index-based implementation of the {@code QueueInterface}.
+ * <p>The elements are kept in a ring whose length is a power of two, so wrapping around is a mask instead of a
+ * division, and the ring doubles when it is full. Iterating walks the queue from front to back without removing
+ * anything, and fails fast with a {@code ConcurrentModificationException} if the queue is changed meanwhile.</p>
+ * <p>See {@code IntArrayQueue} and {@code DoubleArrayQueue} for queues of primitives without boxing.</p>
+ * @param <E> the object type of the {@code ArrayQueue}.
  */
-public class ArrayQueue<E> implements QueueInterface<E> {
+public class ArrayQueue<E> implements QueueInterface<E>, Iterable<E> {
+    /** Capacity of a queue created without one */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    // Largest power of two an array can hold
+    static final int MAX_CAPACITY = 1 << 30;
 
     // Private data
-    private final int size; 
-    private int count, front, back; 
-    private E[] arr; 
+    private Object[] arr;
+    private int mask, count, front;
+    private int modCount;
 
     /**
-     * Initializes an {@code ArrayQueue} of a specified size, this cannot be resized. 
-     * @param n the size of the queue
+     * Initializes an empty {@code ArrayQueue} with the default capacity
+     */
+    public ArrayQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes an empty {@code ArrayQueue} with room for a number of elements before it has to grow
+     * @param n the initial capacity, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is negative
      */
-    @SuppressWarnings("unchecked")
     public ArrayQueue(int n) {
-        size = n; 
-        arr = (E[]) new Object[size];
-        front = 0; 
-        back = size-1; 
-        count = 0; 
+        arr = new Object[ringLength(n)];
+        mask = arr.length - 1;
     }
 
+    /**
+     * Initializes an {@code ArrayQueue} holding a copy of an array, the first element is at the front.
+     * The array is not used afterwards.
+     * @param a the elements to enqueue, may contain {@code null}s
+     */
     public ArrayQueue(E[] a) {
-        size = a.length; 
-        arr = a; 
-        front = 0; 
-        back = a.length; 
-        count = a.length; 
+        this(a.length);
+        System.arraycopy(a, 0, arr, 0, a.length);
+        count = a.length;
+    }
+
+    /**
+     * Gets the length of a ring with room for a number of elements
+     * @param n the number of elements
+     * @return the smallest power of two that is at least {@code n}, and at least 1
+     * @throws IllegalArgumentException if {@code n} is negative or too large for an array
+     */
+    static int ringLength(int n) {
+        if (n < 0 || n > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 0 and " + MAX_CAPACITY + ": " + n);
+        }
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
     }
 
     /**
@@ -42,7 +74,7 @@ public class ArrayQueue<E> implements QueueInterface<E> {
      */
     @Override
     public int size() {
-        return count; 
+        return count;
     }
 
     /**
@@ -51,55 +83,141 @@ public class ArrayQueue<E> implements QueueInterface<E> {
      */
     @Override
     public boolean isEmpty() {
-        return count == 0; 
+        return count == 0;
     }
 
     /**
-     * Check if the queue has reached maximum capacity
-     * @return if the queue is full or not
+     * Check how many elements fit before the queue grows
+     * @return the length of the ring
      */
-    public boolean isFull() {
-        return count == size; 
+    public int capacity() {
+        return arr.length;
     }
 
     /**
      * Check the next element to be dequeued without dequeuing it
      * @return the next element
+     * @throws NoSuchElementException if the queue is empty.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public E peek() throws NoSuchElementException {
-        return arr[front]; 
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return (E) arr[front];
     }
 
     /**
-     * Adds/enqueues an element to the back of the stack
-     * @param data the object to be added to the stack
-     * @throws QueueOverflowException if the queue is already at maximum capacity
+     * Adds/enqueues an element to the back of the queue, doubling the capacity if it is full
+     * @param data the object to be added to the queue
+     * @throws QueueOverflowException if the queue already holds the most elements an array can
      */
     @Override
     public void enqueue(E data) throws QueueOverflowException {
-        if (isFull()) {
-            throw new QueueOverflowException(); 
+        if (count == arr.length) {
+            grow();
         }
-        back = (back+1) % size; 
-        arr[back] = data; 
-        count++; 
+        arr[(front + count) & mask] = data;
+        count++;
+        modCount++;
     }
 
     /**
-     * Pops/dequeues an element to the back of the stack
+     * Pops/dequeues an element from the front of the queue
      * @return the data that was popped from the queue
      * @throws NoSuchElementException if the queue is empty.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public E dequeue() throws NoSuchElementException {
         if (isEmpty()) {
-            throw new NoSuchElementException(); 
+            throw new NoSuchElementException();
+        }
+        E qFront = (E) arr[front];
+        // Let the element be collected
+        arr[front] = null;
+        front = (front + 1) & mask;
+        count--;
+        modCount++;
+        return qFront;
+    }
+
+    /**
+     * Dequeues every element into a collection, in order
+     * @param c the collection to add to
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Dequeues up to a number of elements into a collection, in order
+     * @param c the collection to add to
+     * @param max the most elements to move
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super E> c, int max) {
+        int n = Math.min(count, Math.max(max, 0));
+        for (int i = 0; i<n; i++) {
+            c.add(dequeue());
+        }
+        return n;
+    }
+
+    /**
+     * Removes every element, keeping the capacity
+     */
+    public void clear() {
+        for (int i = 0; i<count; i++) {
+            arr[(front + i) & mask] = null;
+        }
+        front = 0;
+        count = 0;
+        modCount++;
+    }
+
+    /**
+     * Walks the queue from front to back without dequeuing anything
+     * @return an iterator that throws a {@code ConcurrentModificationException} if the queue changes while it is used
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final int expectedModCount = modCount;
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                return (E) arr[(front + i++) & mask];
+            }
+        };
+    }
+
+    private void grow() {
+        if (arr.length == MAX_CAPACITY) {
+            throw new QueueOverflowException("Queue cannot hold more than " + MAX_CAPACITY + " elements");
         }
-        E qFront = arr[front]; 
-        front = (front+1) % size; 
-        count--; 
-        return qFront; 
+        Object[] bigger = new Object[arr.length * 2];
+        // Unwraps the ring so the front is at index 0
+        int head = arr.length - front;
+        System.arraycopy(arr, front, bigger, 0, head);
+        System.arraycopy(arr, 0, bigger, head, front);
+        arr = bigger;
+        mask = bigger.length - 1;
+        front = 0;
     }
-    
 }
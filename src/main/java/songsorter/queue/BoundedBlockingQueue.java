@@ -0,0 +1,228 @@
+package songsorter.queue;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe, fixed capacity queue built on an {@code ArrayQueue}, used to connect the stages of a pipeline.
+ * {@code put()} blocks while the queue is full so a slow consumer applies backpressure to its producers, and
+ * {@code take()} blocks while the queue is empty until the producers {@code close()} it.
+ * @param <E> the object type of the queue
+ */
+public class BoundedBlockingQueue<E> implements QueueInterface<E> {
+
+    // Private data
+    private final int capacity;
+    private final ArrayQueue<E> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private boolean closed;
+
+    /**
+     * Initializes an empty queue
+     * @param capacity the maximum number of elements held at once
+     */
+    public BoundedBlockingQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        queue = new ArrayQueue<E>(capacity);
+    }
+
+    /**
+     * Gets the maximum number of elements held at once
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Check the the number of elements in the queue
+     * @return the number of elements in the queue
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if the queue has no elements
+     * @return if the queue is empty or not
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Check the next element to be dequeued without dequeuing it
+     * @return the next element
+     * @throws NoSuchElementException if the queue is empty
+     */
+    @Override
+    public E peek() throws NoSuchElementException {
+        lock.lock();
+        try {
+            if (queue.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return queue.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an element without waiting
+     * @param data the object to be added
+     * @throws QueueOverflowException if the queue is full or closed
+     */
+    @Override
+    public void enqueue(E data) throws QueueOverflowException {
+        lock.lock();
+        try {
+            if (closed || queue.size() == capacity) {
+                throw new QueueOverflowException();
+            }
+            queue.enqueue(data);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an element without waiting
+     * @return the data that was removed from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    @Override
+    public E dequeue() throws NoSuchElementException {
+        lock.lock();
+        try {
+            E data = queue.dequeue();
+            notFull.signal();
+            return data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an element, waiting while the queue is full
+     * @param data the object to be added
+     * @return {@code false} if the queue was closed and the element was dropped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean put(E data) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && queue.size() == capacity) {
+                notFull.await();
+            }
+            if (closed) {
+                return false;
+            }
+            queue.enqueue(data);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an element, waiting while the queue is empty and still open
+     * @return the next element, or {@code null} once the queue is closed and drained
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && queue.isEmpty()) {
+                notEmpty.await();
+            }
+            if (queue.isEmpty()) {
+                return null;
+            }
+            E data = queue.dequeue();
+            notFull.signal();
+            return data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the elements that are queued right now, up to a limit, without waiting for more
+     * @param c the collection to add to, in order
+     * @param max the most elements to move
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super E> c, int max) {
+        lock.lock();
+        try {
+            int n = queue.drainTo(c, max);
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting elements. Consumers still receive the elements already queued, then {@code take()} returns {@code null}.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue and discards every queued element
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            while (!queue.isEmpty()) {
+                queue.dequeue();
+            }
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the queue has been closed
+     * @return if no more elements will be accepted
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
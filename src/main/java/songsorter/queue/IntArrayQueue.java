@@ -0,0 +1,189 @@
+package songsorter.queue;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * {@code ArrayQueue} of {@code int}s, such as indices of songs waiting for a stage, stored without boxing in a ring
+ * that doubles when it is full.
+ */
+public class IntArrayQueue implements Iterable<Integer> {
+
+    // Private data
+    private int[] arr;
+    private int mask, count, front;
+    private int modCount;
+
+    /**
+     * Initializes an empty queue with the default capacity
+     */
+    public IntArrayQueue() {
+        this(ArrayQueue.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes an empty queue with room for a number of elements before it has to grow
+     * @param n the initial capacity, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public IntArrayQueue(int n) {
+        arr = new int[ArrayQueue.ringLength(n)];
+        mask = arr.length - 1;
+    }
+
+    /**
+     * Initializes a queue holding a copy of an array, the first element is at the front
+     * @param a the elements to enqueue
+     */
+    public IntArrayQueue(int[] a) {
+        this(a.length);
+        System.arraycopy(a, 0, arr, 0, a.length);
+        count = a.length;
+    }
+
+    /**
+     * Check the the number of elements in the queue
+     * @return the number of elements in the queue
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Check if the queue has no elements
+     * @return if the queue is empty or not
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Check how many elements fit before the queue grows
+     * @return the length of the ring
+     */
+    public int capacity() {
+        return arr.length;
+    }
+
+    /**
+     * Check the next element to be dequeued without dequeuing it
+     * @return the next element
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    public int peek() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return arr[front];
+    }
+
+    /**
+     * Adds an element to the back of the queue, doubling the capacity if it is full
+     * @param data the value to be added to the queue
+     * @throws QueueOverflowException if the queue already holds the most elements an array can
+     */
+    public void enqueue(int data) throws QueueOverflowException {
+        if (count == arr.length) {
+            grow();
+        }
+        arr[(front + count) & mask] = data;
+        count++;
+        modCount++;
+    }
+
+    /**
+     * Removes the element at the front of the queue
+     * @return the value that was removed
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    public int dequeue() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int qFront = arr[front];
+        front = (front + 1) & mask;
+        count--;
+        modCount++;
+        return qFront;
+    }
+
+    /**
+     * Dequeues up to {@code dest.length} elements into an array, in order
+     * @param dest the array to fill from index 0
+     * @return the number of elements moved
+     */
+    public int drainTo(int[] dest) {
+        int n = Math.min(count, dest.length);
+        int head = Math.min(n, arr.length - front);
+        System.arraycopy(arr, front, dest, 0, head);
+        System.arraycopy(arr, 0, dest, head, n - head);
+        front = (front + n) & mask;
+        count -= n;
+        modCount++;
+        return n;
+    }
+
+    /**
+     * Copies the elements into a new array without dequeuing them
+     * @return the elements from front to back
+     */
+    public int[] toArray() {
+        int[] a = new int[count];
+        int head = Math.min(count, arr.length - front);
+        System.arraycopy(arr, front, a, 0, head);
+        System.arraycopy(arr, 0, a, head, count - head);
+        return a;
+    }
+
+    /**
+     * Removes every element, keeping the capacity
+     */
+    public void clear() {
+        front = 0;
+        count = 0;
+        modCount++;
+    }
+
+    /**
+     * Walks the queue from front to back without dequeuing anything, use {@code nextInt()} to avoid boxing
+     * @return an iterator that throws a {@code ConcurrentModificationException} if the queue changes while it is used
+     */
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private final int expectedModCount = modCount;
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            public int nextInt() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                return arr[(front + i++) & mask];
+            }
+        };
+    }
+
+    private void grow() {
+        if (arr.length == ArrayQueue.MAX_CAPACITY) {
+            throw new QueueOverflowException("Queue cannot hold more than " + ArrayQueue.MAX_CAPACITY + " elements");
+        }
+        int[] bigger = new int[arr.length * 2];
+        // Unwraps the ring so the front is at index 0
+        int head = arr.length - front;
+        System.arraycopy(arr, front, bigger, 0, head);
+        System.arraycopy(arr, 0, bigger, head, front);
+        arr = bigger;
+        mask = bigger.length - 1;
+        front = 0;
+    }
+}
@@ -0,0 +1,215 @@
+package songsorter.tour;
+
+import java.util.Arrays;
+
+/**
+ * Static 2D k-d tree over a fixed set of points which supports removing points, used to find the nearest
+ * unvisited point while building a tour.
+ * <p>The tree is stored implicitly: the points are permuted so that each subrange has its splitting point at its
+ * middle, splitting on x and y in turn. Every node keeps the number of points still present below it, so searches
+ * skip subtrees that are empty. Building takes O(n log n) and a nearest neighbour query takes O(log n) on average.</p>
+ */
+public class KdTree {
+
+    // Private data
+    private final double[] x, y;
+    private final int[] perm;
+    private final int[] pos;
+    private final int[] alive;
+    private final boolean[] removed;
+    private int size;
+
+    // Search state, a tree is used by one thread at a time
+    private int best;
+    private double bestDist;
+
+    /**
+     * Builds a tree over every point
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point, same length as {@code x}
+     */
+    public KdTree(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        this.x = x;
+        this.y = y;
+        int n = x.length;
+        perm = new int[n];
+        for (int i = 0; i<n; i++) perm[i] = i;
+        build(0, n, 0);
+
+        pos = new int[n];
+        for (int i = 0; i<n; i++) pos[perm[i]] = i;
+        alive = new int[n];
+        count(0, n);
+        removed = new boolean[n];
+        size = n;
+    }
+
+    /**
+     * Gets the number of points still in the tree
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a point is still in the tree
+     * @param i index of the point
+     * @return if the point has not been removed
+     */
+    public boolean contains(int i) {
+        return !removed[i];
+    }
+
+    /**
+     * Removes a point so later queries skip it
+     * @param i index of the point
+     */
+    public void remove(int i) {
+        if (removed[i]) return;
+        removed[i] = true;
+        size--;
+        int p = pos[i];
+        int lo = 0, hi = perm.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            alive[mid]--;
+            if (p == mid) return;
+            if (p < mid) hi = mid;
+            else lo = mid + 1;
+        }
+    }
+
+    /**
+     * Finds the point closest to a location, ties go to the lower index
+     * @param qx x coordinate of the location
+     * @param qy y coordinate of the location
+     * @return index of the nearest point still in the tree, or -1 if the tree is empty
+     */
+    public int nearest(double qx, double qy) {
+        best = -1;
+        bestDist = Double.POSITIVE_INFINITY;
+        nearest(0, perm.length, 0, qx, qy);
+        return best;
+    }
+
+    /**
+     * Finds the points closest to a location, including removed ones
+     * @param qx x coordinate of the location
+     * @param qy y coordinate of the location
+     * @param k number of points to find
+     * @param exclude index of a point to leave out, such as the point queried from, or -1
+     * @return indices of up to {@code k} points, nearest first
+     */
+    public int[] nearest(double qx, double qy, int k, int exclude) {
+        if (k <= 0) return new int[0];
+        int[] idx = new int[k];
+        double[] dist = new double[k];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int found = knn(0, perm.length, 0, qx, qy, idx, dist, 0, exclude);
+        return Arrays.copyOf(idx, found);
+    }
+
+    private void build(int lo, int hi, int axis) {
+        if (hi - lo <= 1) return;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis == 0 ? x : y);
+        build(lo, mid, axis ^ 1);
+        build(mid + 1, hi, axis ^ 1);
+    }
+
+    /**
+     * Quickselect that moves the k-th smallest point of perm[lo..hi] by coordinate to position k, with smaller points
+     * before it and larger ones after. Ties are ordered by index so the layout is deterministic.
+     */
+    private void select(int lo, int hi, int k, double[] c) {
+        while (lo < hi) {
+            int pivot = perm[(lo + hi) >>> 1];
+            swap((lo + hi) >>> 1, hi);
+            int store = lo;
+            for (int i = lo; i<hi; i++) {
+                if (less(perm[i], pivot, c)) swap(i, store++);
+            }
+            swap(store, hi);
+            if (store == k) return;
+            if (k < store) hi = store - 1;
+            else lo = store + 1;
+        }
+    }
+
+    private static boolean less(int a, int b, double[] c) {
+        return c[a] < c[b] || (c[a] == c[b] && a < b);
+    }
+
+    private void swap(int i, int j) {
+        int t = perm[i];
+        perm[i] = perm[j];
+        perm[j] = t;
+    }
+
+    private int count(int lo, int hi) {
+        if (lo >= hi) return 0;
+        int mid = (lo + hi) >>> 1;
+        alive[mid] = 1 + count(lo, mid) + count(mid + 1, hi);
+        return alive[mid];
+    }
+
+    private void nearest(int lo, int hi, int axis, double qx, double qy) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (alive[mid] == 0) return;
+
+        int p = perm[mid];
+        if (!removed[p]) {
+            double dx = x[p] - qx, dy = y[p] - qy;
+            double d = dx*dx + dy*dy;
+            if (d < bestDist || (d == bestDist && p < best)) {
+                bestDist = d;
+                best = p;
+            }
+        }
+
+        double diff = axis == 0 ? qx - x[p] : qy - y[p];
+        int nearLo = diff < 0 ? lo : mid + 1, nearHi = diff < 0 ? mid : hi;
+        int farLo = diff < 0 ? mid + 1 : lo, farHi = diff < 0 ? hi : mid;
+        nearest(nearLo, nearHi, axis ^ 1, qx, qy);
+        // Equal distances are kept so ties still resolve to the lower index
+        if (diff*diff <= bestDist) {
+            nearest(farLo, farHi, axis ^ 1, qx, qy);
+        }
+    }
+
+    private int knn(int lo, int hi, int axis, double qx, double qy, int[] idx, double[] dist, int found, int exclude) {
+        if (lo >= hi) return found;
+        int mid = (lo + hi) >>> 1;
+        int p = perm[mid];
+        if (p != exclude) {
+            double dx = x[p] - qx, dy = y[p] - qy;
+            double d = dx*dx + dy*dy;
+            if (found < idx.length || d < dist[found-1]) {
+                // Insertion into the sorted candidate list
+                int i = Math.min(found, idx.length - 1);
+                while (i > 0 && dist[i-1] > d) {
+                    dist[i] = dist[i-1];
+                    idx[i] = idx[i-1];
+                    i--;
+                }
+                dist[i] = d;
+                idx[i] = p;
+                if (found < idx.length) found++;
+            }
+        }
+
+        double diff = axis == 0 ? qx - x[p] : qy - y[p];
+        int nearLo = diff < 0 ? lo : mid + 1, nearHi = diff < 0 ? mid : hi;
+        int farLo = diff < 0 ? mid + 1 : lo, farHi = diff < 0 ? hi : mid;
+        found = knn(nearLo, nearHi, axis ^ 1, qx, qy, idx, dist, found, exclude);
+        if (found < idx.length || diff*diff < dist[found-1]) {
+            found = knn(farLo, farHi, axis ^ 1, qx, qy, idx, dist, found, exclude);
+        }
+        return found;
+    }
+}
@@ -0,0 +1,153 @@
+package songsorter.tour;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a {@code TourPlanner} from many start points in parallel on a {@code ForkJoinPool} and keeps the shortest
+ * tour. More starts take longer but find shorter tours, and with the same seed the result is always the same.
+ * <p>Start points are drawn from a {@code Random} with the given seed, and ties between equally short tours go to
+ * the start drawn first, so the output does not depend on thread scheduling.</p>
+ */
+public class MultiStartSolver {
+
+    /**
+     * The best tour along with the length reached from every start
+     * @param best the shortest tour
+     * @param starts the start points in the order they were drawn
+     * @param lengths the final tour length from each start, same order as {@code starts}
+     * @param nanos wall clock time of the whole search
+     */
+    public record Result(TourResult best, int[] starts, double[] lengths, long nanos) {
+        /**
+         * Gets the mean tour length over all starts
+         * @return the mean length
+         */
+        public double meanLength() {
+            double sum = 0;
+            for (double l: lengths) sum += l;
+            return lengths.length == 0 ? 0 : sum / lengths.length;
+        }
+
+        /**
+         * Gets the longest tour length over all starts
+         * @return the worst length
+         */
+        public double worstLength() {
+            double max = 0;
+            for (double l: lengths) max = Math.max(max, l);
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d starts in %.2f ms, best %.4f, mean %.4f, worst %.4f, best tour %s",
+                starts.length, nanos / 1e6, best.length(), meanLength(), worstLength(), best);
+        }
+    }
+
+    // Private data
+    private final TourPlanner planner;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a solver running on the common {@code ForkJoinPool}, which uses every core
+     * @param planner builds and improves the tour from each start
+     */
+    public MultiStartSolver(TourPlanner planner) {
+        this(planner, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a solver
+     * @param planner builds and improves the tour from each start
+     * @param pool the pool the starts run on
+     */
+    public MultiStartSolver(TourPlanner planner, ForkJoinPool pool) {
+        this.planner = planner;
+        this.pool = pool;
+    }
+
+    /**
+     * Builds a tour from several start points and keeps the shortest
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point, same length as {@code x}
+     * @param starts number of start points, every point is tried if this is at least the number of points
+     * @param seed seed for drawing the start points
+     * @return the shortest tour and the length from every start
+     */
+    public Result solve(double[] x, double[] y, int starts, long seed) {
+        Tours.check(x, y, 0);
+        long t0 = System.nanoTime();
+        int[] chosen = chooseStarts(x.length, starts, seed);
+        TourResult[] results = new TourResult[chosen.length];
+        if (chosen.length > 0) {
+            pool.invoke(new Starts(x, y, chosen, results, 0, chosen.length));
+        }
+
+        int best = -1;
+        double[] lengths = new double[chosen.length];
+        for (int i = 0; i<results.length; i++) {
+            lengths[i] = results[i].length();
+            // Strictly shorter only, so ties keep the earlier start
+            if (best == -1 || lengths[i] < lengths[best]) best = i;
+        }
+        TourResult bestTour = best == -1 ? new TourResult(new int[0], 0, 0, 0, 0, "empty") : results[best];
+        return new Result(bestTour, chosen, lengths, System.nanoTime() - t0);
+    }
+
+    /**
+     * Draws distinct start points with a partial Fisher-Yates shuffle
+     * @param n number of points
+     * @param starts number of start points wanted
+     * @param seed seed for the shuffle
+     * @return the start points in the order drawn
+     */
+    static int[] chooseStarts(int n, int starts, long seed) {
+        int k = Math.max(0, Math.min(starts, n));
+        int[] all = new int[n];
+        for (int i = 0; i<n; i++) all[i] = i;
+        Random r = new Random(seed);
+        for (int i = 0; i<k; i++) {
+            int j = i + r.nextInt(n - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+        int[] chosen = new int[k];
+        System.arraycopy(all, 0, chosen, 0, k);
+        return chosen;
+    }
+
+    /**
+     * Splits the starts in halves until each task has one start, which is planned on the current worker
+     */
+    private class Starts extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] x, y;
+        private final int[] starts;
+        private final TourResult[] results;
+        private final int lo, hi;
+
+        Starts(double[] x, double[] y, int[] starts, TourResult[] results, int lo, int hi) {
+            this.x = x;
+            this.y = y;
+            this.starts = starts;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                results[lo] = planner.plan(x, y, starts[lo]);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Starts(x, y, starts, results, lo, mid), new Starts(x, y, starts, results, mid, hi));
+        }
+    }
+}
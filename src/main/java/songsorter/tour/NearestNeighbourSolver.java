@@ -0,0 +1,40 @@
+package songsorter.tour;
+
+/**
+ * The original nearest neighbour heuristic, scanning every unvisited point at each step.
+ * Takes quadratic time, kept as a reference for the spatial solver and for very small playlists.
+ */
+public class NearestNeighbourSolver implements TourSolver {
+
+    @Override
+    public int[] solve(double[] x, double[] y, int start) {
+        Tours.check(x, y, start);
+        int n = x.length;
+        int[] tour = new int[n];
+        if (n == 0) return tour;
+
+        // Unvisited points are kept at the end of remaining, swapping each visited point out
+        int[] remaining = new int[n];
+        for (int i = 0; i<n; i++) remaining[i] = i;
+        remaining[start] = 0;
+        remaining[0] = start;
+        tour[0] = start;
+
+        for (int i = 1; i<n; i++) {
+            int prev = tour[i-1];
+            int best = i;
+            double bestDist = Double.POSITIVE_INFINITY;
+            for (int j = i; j<n; j++) {
+                double d = Tours.distance(x, y, prev, remaining[j]);
+                if (d < bestDist || (d == bestDist && remaining[j] < remaining[best])) {
+                    bestDist = d;
+                    best = j;
+                }
+            }
+            tour[i] = remaining[best];
+            remaining[best] = remaining[i];
+            remaining[i] = tour[i];
+        }
+        return tour;
+    }
+}
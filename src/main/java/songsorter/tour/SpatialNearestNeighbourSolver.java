@@ -0,0 +1,26 @@
+package songsorter.tour;
+
+/**
+ * Nearest neighbour heuristic that finds each next point with a {@code KdTree} instead of scanning every
+ * unvisited point, taking O(n log n) on average. Builds the same tour as {@code NearestNeighbourSolver}.
+ */
+public class SpatialNearestNeighbourSolver implements TourSolver {
+
+    @Override
+    public int[] solve(double[] x, double[] y, int start) {
+        Tours.check(x, y, start);
+        int n = x.length;
+        int[] tour = new int[n];
+        if (n == 0) return tour;
+
+        KdTree tree = new KdTree(x, y);
+        tour[0] = start;
+        tree.remove(start);
+        for (int i = 1; i<n; i++) {
+            int prev = tour[i-1];
+            tour[i] = tree.nearest(x[prev], y[prev]);
+            tree.remove(tour[i]);
+        }
+        return tour;
+    }
+}
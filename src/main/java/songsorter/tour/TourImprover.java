@@ -0,0 +1,22 @@
+package songsorter.tour;
+
+/**
+ * Shortens an existing open tour in place without moving its first point
+ */
+public interface TourImprover {
+    /**
+     * Improves a tour
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point, same length as {@code x}
+     * @param tour the point indices in visiting order, rearranged in place
+     */
+    public void improve(double[] x, double[] y, int[] tour);
+
+    /**
+     * Gets a short name of the improver for reports
+     * @return the improver name
+     */
+    public default String name() {
+        return getClass().getSimpleName();
+    }
+}
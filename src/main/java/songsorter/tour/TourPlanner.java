@@ -0,0 +1,66 @@
+package songsorter.tour;
+
+/**
+ * Builds a tour with a {@code TourSolver}, optionally shortens it with a {@code TourImprover}, and reports the
+ * length and time of each step
+ */
+public class TourPlanner {
+
+    // Private data
+    private final TourSolver solver;
+    private final TourImprover improver;
+
+    /**
+     * Creates a planner
+     * @param solver builds the initial tour
+     * @param improver shortens the tour, or {@code null} to keep the initial tour
+     */
+    public TourPlanner(TourSolver solver, TourImprover improver) {
+        this.solver = solver;
+        this.improver = improver;
+    }
+
+    /**
+     * Gets the default planner, a spatial nearest neighbour tour improved with 2-opt and Or-opt
+     * @return a new planner
+     */
+    public static TourPlanner defaultPlanner() {
+        return new TourPlanner(new SpatialNearestNeighbourSolver(), new TwoOptImprover());
+    }
+
+    /**
+     * Builds a tour
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point, same length as {@code x}
+     * @param start index of the point the tour starts at
+     * @return the tour with its length and timings
+     */
+    public TourResult plan(double[] x, double[] y, int start) {
+        long t0 = System.nanoTime();
+        int[] order = solver.solve(x, y, start);
+        long t1 = System.nanoTime();
+        double constructed = Tours.length(x, y, order);
+        if (improver == null) {
+            return new TourResult(order, constructed, constructed, t1 - t0, 0, solver.name());
+        }
+        improver.improve(x, y, order);
+        long t2 = System.nanoTime();
+        return new TourResult(order, constructed, Tours.length(x, y, order), t1 - t0, t2 - t1, solver.name() + " + " + improver.name());
+    }
+
+    /**
+     * Gets the solver that builds the initial tour
+     * @return the solver
+     */
+    public TourSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * Gets the improver that shortens the tour
+     * @return the improver, or {@code null} if there is none
+     */
+    public TourImprover getImprover() {
+        return improver;
+    }
+}
@@ -0,0 +1,36 @@
+package songsorter.tour;
+
+/**
+ * A tour built by a {@code TourPlanner} along with its quality and the time spent on it
+ * @param order the point indices in visiting order
+ * @param constructedLength length of the tour before improvement
+ * @param length length of the final tour
+ * @param constructionNanos time spent building the tour
+ * @param improvementNanos time spent improving the tour, 0 if there is no improver
+ * @param method names of the solver and improver used
+ */
+public record TourResult(int[] order, double constructedLength, double length, long constructionNanos, long improvementNanos, String method) {
+
+    /**
+     * Gets how much shorter the improver made the tour
+     * @return the fraction of the constructed length removed, between 0 and 1
+     */
+    public double improvement() {
+        return constructedLength == 0 ? 0 : 1 - length / constructedLength;
+    }
+
+    /**
+     * Gets the total time spent
+     * @return construction and improvement time in nanoseconds
+     */
+    public long totalNanos() {
+        return constructionNanos + improvementNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d points, length %.4f (%.4f before improvement, %.1f%% shorter) in %.2f ms (%.2f ms building, %.2f ms improving)",
+            method, order.length, length, constructedLength, improvement()*100,
+            totalNanos() / 1e6, constructionNanos / 1e6, improvementNanos / 1e6);
+    }
+}
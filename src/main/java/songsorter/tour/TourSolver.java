@@ -0,0 +1,24 @@
+package songsorter.tour;
+
+/**
+ * Builds an open tour, an order that visits every point once, through points on a plane.
+ * Points are given as coordinate arrays so solvers work on primitives instead of calling back into songs.
+ */
+public interface TourSolver {
+    /**
+     * Builds a tour
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point, same length as {@code x}
+     * @param start index of the point the tour starts at
+     * @return the point indices in visiting order, starting with {@code start}
+     */
+    public int[] solve(double[] x, double[] y, int start);
+
+    /**
+     * Gets a short name of the solver for reports
+     * @return the solver name
+     */
+    public default String name() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,53 @@
+package songsorter.tour;
+
+/**
+ * Static helpers shared by the tour solvers
+ */
+public final class Tours {
+
+    private Tours() {}
+
+    /**
+     * Euclidean distance between two points
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point
+     * @param a index of the first point
+     * @param b index of the second point
+     * @return the distance
+     */
+    public static double distance(double[] x, double[] y, int a, int b) {
+        double dx = x[a] - x[b];
+        double dy = y[a] - y[b];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    /**
+     * Length of an open tour, the sum of the distances between consecutive points
+     * @param x the x coordinate of each point
+     * @param y the y coordinate of each point
+     * @param tour the point indices in visiting order
+     * @return the tour length
+     */
+    public static double length(double[] x, double[] y, int[] tour) {
+        double len = 0;
+        for (int i = 1; i<tour.length; i++) {
+            len += distance(x, y, tour[i-1], tour[i]);
+        }
+        return len;
+    }
+
+    /**
+     * Checks that the coordinate arrays match and the start is a valid index
+     * @param x the x coordinates
+     * @param y the y coordinates
+     * @param start index of the first point
+     */
+    static void check(double[] x, double[] y, int start) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        if (x.length > 0 && (start < 0 || start >= x.length)) {
+            throw new IndexOutOfBoundsException("Start " + start + " out of bounds for " + x.length + " points");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package songsorter.tour;
+
+/**
+ * Local search that shortens an open tour with 2-opt and Or-opt moves until neither finds an improvement.
+ * <p>Only moves that connect a point to one of its {@code k} nearest neighbours are tried, found once with a
+ * {@code KdTree}, so each pass takes O(nk) checks instead of O(n^2). A 2-opt move reverses a section of the tour
+ * to remove a crossing, and an Or-opt move cuts out a run of up to three points and reinserts it, possibly
+ * reversed, next to a neighbour. The first point of the tour never moves.</p>
+ */
+public class TwoOptImprover implements TourImprover {
+    /** Default number of neighbours considered for each point */
+    public static final int DEFAULT_NEIGHBOURS = 8;
+    /** Default limit on passes over the tour, each pass only runs if the previous one improved it */
+    public static final int DEFAULT_MAX_PASSES = 50;
+
+    private static final double EPSILON = 1e-12;
+    private static final int MAX_SEGMENT = 3;
+
+    // Private data
+    private final int neighbours;
+    private final int maxPasses;
+
+    /**
+     * Creates an improver with the default neighbour count and pass limit
+     */
+    public TwoOptImprover() {
+        this(DEFAULT_NEIGHBOURS, DEFAULT_MAX_PASSES);
+    }
+
+    /**
+     * Creates an improver
+     * @param neighbours number of neighbours considered for each point
+     * @param maxPasses limit on passes over the tour
+     */
+    public TwoOptImprover(int neighbours, int maxPasses) {
+        this.neighbours = neighbours;
+        this.maxPasses = maxPasses;
+    }
+
+    @Override
+    public String name() {
+        return "2-opt+Or-opt";
+    }
+
+    @Override
+    public void improve(double[] x, double[] y, int[] tour) {
+        int n = tour.length;
+        if (n < 4) return;
+
+        KdTree tree = new KdTree(x, y);
+        int[][] near = new int[x.length][];
+        for (int p: tour) {
+            near[p] = tree.nearest(x[p], y[p], Math.min(neighbours, n - 1), p);
+        }
+        int[] pos = new int[x.length];
+        for (int i = 0; i<n; i++) pos[tour[i]] = i;
+
+        for (int pass = 0; pass<maxPasses; pass++) {
+            boolean improved = twoOpt(x, y, tour, pos, near);
+            improved |= orOpt(x, y, tour, pos, near);
+            if (!improved) return;
+        }
+    }
+
+    /**
+     * For each edge (a, b), tries replacing it and a later edge (c, d) with (a, c) and (b, d) where c is near a,
+     * which reverses the section from b to c. When c is the last point there is no edge (c, d) to replace.
+     */
+    private static boolean twoOpt(double[] x, double[] y, int[] tour, int[] pos, int[][] near) {
+        int n = tour.length;
+        boolean improved = false;
+        for (int i = 0; i<n-1; i++) {
+            int a = tour[i], b = tour[i+1];
+            double ab = Tours.distance(x, y, a, b);
+            for (int c: near[a]) {
+                double ac = Tours.distance(x, y, a, c);
+                // Neighbours are sorted, none further along can shorten the tour
+                if (ac >= ab) break;
+                int j = pos[c];
+                if (j <= i + 1) continue;
+                double delta = ac - ab;
+                if (j + 1 < n) {
+                    int d = tour[j+1];
+                    delta += Tours.distance(x, y, b, d) - Tours.distance(x, y, c, d);
+                }
+                if (delta < -EPSILON) {
+                    reverse(tour, pos, i + 1, j);
+                    b = tour[i+1];
+                    ab = Tours.distance(x, y, a, b);
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Tries moving each run of 1 to {@code MAX_SEGMENT} points to sit between a neighbour of its first point and
+     * that neighbour's successor, in either orientation
+     */
+    private static boolean orOpt(double[] x, double[] y, int[] tour, int[] pos, int[][] near) {
+        int n = tour.length;
+        boolean improved = false;
+        for (int len = 1; len<=MAX_SEGMENT; len++) {
+            for (int i = 1; i+len<=n; i++) {
+                int first = tour[i], last = tour[i+len-1];
+                int prev = tour[i-1];
+                int next = i + len < n ? tour[i+len] : -1;
+                double removeGain = Tours.distance(x, y, prev, first);
+                if (next >= 0) {
+                    removeGain += Tours.distance(x, y, last, next) - Tours.distance(x, y, prev, next);
+                }
+
+                for (int c: near[first]) {
+                    int j = pos[c];
+                    // c and its successor must lie outside the run and not be where it already is
+                    if (j >= i - 1 && j < i + len) continue;
+                    int e = j + 1 < n ? tour[j+1] : -1;
+                    double ce = e >= 0 ? Tours.distance(x, y, c, e) : 0;
+                    // c then first..last then e, or c then last..first then e
+                    double forward = Tours.distance(x, y, c, first) + (e >= 0 ? Tours.distance(x, y, last, e) : 0) - ce;
+                    double backward = Tours.distance(x, y, c, last) + (e >= 0 ? Tours.distance(x, y, first, e) : 0) - ce;
+                    boolean reversed = backward < forward;
+                    if (Math.min(forward, backward) < removeGain - EPSILON) {
+                        move(tour, pos, i, len, j, reversed);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    private static void reverse(int[] tour, int[] pos, int from, int to) {
+        while (from < to) {
+            int t = tour[from];
+            tour[from] = tour[to];
+            tour[to] = t;
+            pos[tour[from]] = from;
+            pos[tour[to]] = to;
+            from++;
+            to--;
+        }
+    }
+
+    /**
+     * Moves tour[i..i+len-1] to directly after the point at position j, shifting the points in between
+     */
+    private static void move(int[] tour, int[] pos, int i, int len, int j, boolean reversed) {
+        int[] run = new int[len];
+        for (int k = 0; k<len; k++) {
+            run[k] = tour[reversed ? i + len - 1 - k : i + k];
+        }
+        int insertAt;
+        if (j < i) {
+            // Shift tour[j+1..i-1] right by len
+            System.arraycopy(tour, j + 1, tour, j + 1 + len, i - j - 1);
+            insertAt = j + 1;
+        } else {
+            // Shift tour[i+len..j] left by len
+            System.arraycopy(tour, i + len, tour, i, j - i - len + 1);
+            insertAt = j - len + 1;
+        }
+        System.arraycopy(run, 0, tour, insertAt, len);
+        int lo = Math.min(i, insertAt), hi = Math.max(i + len, j + 1);
+        for (int k = lo; k<hi; k++) {
+            pos[tour[k]] = k;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import numpy as np
 from models import MusicEmotionLSTM, LSTMPredictionModel
 import sys
 import os
+import struct
 from pathlib import Path
 
 # Define cusomt exceptions
@@ -12,6 +13,35 @@ class AudioTooShort(Exception):
 class SamplingRateError(Exception):
     pass
 
+# Picks the fastest available pytorch device
+def default_device(): 
+    if torch.backends.mps.is_available():
+        return torch.device("mps")
+    elif torch.cuda.is_available(): 
+        return torch.device("cuda")
+    else:
+        return torch.device("cpu")
+
+# Models are cached per device so a worker process only loads the state dict once
+_models = {}
+
+def load_model(device): 
+    key = str(device)
+    if key not in _models: 
+        input_size = 128
+        hidden_size = 20
+        num_layers = 2
+        output_size = 2
+
+        home_directory = os.path.expanduser('~')
+        cache_path = os.path.join(home_directory, 'Library', 'Caches')
+
+        model = MusicEmotionLSTM(input_size, hidden_size, num_layers, output_size).to(device)
+        model.load_state_dict(torch.load(os.path.join(cache_path, 'io.github.etashj.songsorter','models', 'model_state_dict.pth'), map_location=device))
+        model.eval()
+        _models[key] = model
+    return _models[key]
+
 # Song class fro predition
 class Song: 
     # Constructor either takes a librosa loaded audio clip or path
@@ -23,12 +53,7 @@ class Song:
             raise SamplingRateError("Please load your audio with sampling rate of 44.1kHz")
         self.audio, self.sr = audio
 
-        if torch.backends.mps.is_available():
-            self.device = torch.device("mps")
-        elif torch.cuda.is_available(): 
-            self.device = torch.device("cuda")
-        else:
-            self.device = torch.device("cpu")
+        self.device = default_device()
         
         self.emotions=None
     
@@ -36,9 +61,9 @@ class Song:
     def __str__(self): 
         return self.audio
 
-    # Takes loaded audio, does a mel spectrogram, and passes it to the model
-    # Returns a tensor of the predicted arousal and valence vectors and sets them to self.emotions
-    def getEmotions(self): 
+    # Takes loaded audio and does a mel spectrogram of every 0.5 second segment
+    # Returns a tensor of shape (segments, 44, 128) that can be passed to the model
+    def getMels(self): 
         rem = len(self.audio) % 22050
         clips = []
         mels = []
@@ -61,33 +86,120 @@ class Song:
 
         del mels
 
-        input_size = 128
-        hidden_size = 20
-        num_layers = 2
-        output_size = 2
+        return input_tensor
 
-        home_directory = os.path.expanduser('~')
-        cache_path = os.path.join(home_directory, 'Library', 'Caches')
+    # Takes loaded audio, does a mel spectrogram, and passes it to the model
+    # Returns a tensor of the predicted arousal and valence vectors and sets them to self.emotions
+    def getEmotions(self): 
+        input_tensor = self.getMels()
 
-        model = MusicEmotionLSTM(input_size, hidden_size, num_layers, output_size).to(self.device)
-        model.load_state_dict(torch.load(os.path.join(cache_path, 'io.github.etashj.songsorter','models', 'model_state_dict.pth')))
-        model.eval()
+        model = load_model(self.device)
 
-        out = model({"mel_data":input_tensor})
+        with torch.no_grad():
+            out = model({"mel_data":input_tensor})
 
         self.emotions = out
 
 
         return out
 
-# Ensure a filename is provided
-if len(sys.argv) != 2:
-    print("Usage: python process_file.py <filename>")
-    sys.exit(1)
-
-# The filename to read
-filename = sys.argv[1]
-
-s = Song(filename)
-torch.set_printoptions(threshold=10_000)
-print(s.getEmotions())
+# Runs the model once over the segments of several songs
+# Every segment is the same length so the mels are simply concatenated and the output split back per song
+# Returns a list with a tensor, or the exception if the song failed to load, for each path
+def batchEmotions(paths): 
+    device = default_device()
+    results = [None] * len(paths)
+    mels = []
+    counts = []
+    loaded = []
+    for i, path in enumerate(paths): 
+        try: 
+            m = Song(path).getMels()
+            mels.append(m)
+            counts.append(m.shape[0])
+            loaded.append(i)
+        except Exception as e: 
+            results[i] = e
+
+    if len(mels) > 0: 
+        with torch.no_grad():
+            out = load_model(device)({"mel_data":torch.cat(mels)})
+        for i, emotions in zip(loaded, torch.split(out, counts)): 
+            results[i] = emotions
+    return results
+
+# Newest result protocol, 1 prints the tensor and 2 writes a binary frame
+PROTOCOL_VERSION = 2
+# Frame: magic, rows and columns as little-endian int32, then each row as little-endian float32s
+FRAME_MAGIC = b"SSEM"
+
+def printResult(result, protocol=1): 
+    if isinstance(result, Exception): 
+        print("ERROR " + str(result).replace("\n", " "), flush=True)
+    elif protocol >= 2: 
+        data = result.detach().to("cpu", torch.float32).contiguous().numpy().astype("<f4", copy=False)
+        sys.stdout.flush()
+        sys.stdout.buffer.write(struct.pack("<4sii", FRAME_MAGIC, data.shape[0], data.shape[1]))
+        sys.stdout.buffer.write(data.tobytes())
+        sys.stdout.buffer.flush()
+    else: 
+        print(result)
+        print("END", flush=True)
+
+# Long lived worker, loads the model once and reads one file path per line from stdin
+# Replies with the printed tensor followed by END, or a single ERROR line
+#   HELLO n -> HELLO m, where m is the newest protocol both sides support, 2 replies with frames instead of text
+#   PING -> PONG (health check)
+#   BATCH n -> the next n lines are paths, replies once per path in order
+#   QUIT -> exits
+def worker(): 
+    torch.set_printoptions(threshold=10_000)
+    load_model(default_device())
+    protocol = 1
+    print("READY", flush=True)
+    while True: 
+        line = sys.stdin.readline()
+        if line == "": 
+            break
+        line = line.strip()
+        if line == "": 
+            continue
+        if line == "PING": 
+            print("PONG", flush=True)
+            continue
+        if line == "QUIT": 
+            break
+        if line.startswith("HELLO "): 
+            try: 
+                protocol = max(1, min(PROTOCOL_VERSION, int(line[6:])))
+            except ValueError: 
+                protocol = 1
+            print("HELLO " + str(protocol), flush=True)
+            continue
+        if line.startswith("BATCH "): 
+            paths = [sys.stdin.readline().strip() for _ in range(int(line[6:]))]
+            for result in batchEmotions(paths): 
+                printResult(result, protocol)
+            continue
+        try: 
+            printResult(Song(line).getEmotions(), protocol)
+        except Exception as e: 
+            printResult(e)
+
+if __name__ == "__main__": 
+    # Ensure a filename is provided
+    if len(sys.argv) != 2:
+        print("Usage: python process_file.py <filename>")
+        print("       python process_file.py --worker")
+        sys.exit(1)
+
+    if sys.argv[1] == "--worker": 
+        worker()
+        sys.exit(0)
+
+    # The filename to read
+    filename = sys.argv[1]
+
+    s = Song(filename)
+    torch.set_printoptions(threshold=10_000)
+    print(s.getEmotions())